@@ -0,0 +1,18 @@
+package io.github.nkymz.containersearchcommand.client;
+
+import io.github.nkymz.containersearchcommand.HighlightPayload;
+import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderEvents;
+
+public class ContainerSearchClient implements ClientModInitializer {
+
+    @Override
+    public void onInitializeClient() {
+        // 服务器发来的高亮坐标在客户端本地绘制，服务器不再生成展示实体
+        ClientPlayNetworking.registerGlobalReceiver(HighlightPayload.ID, (payload, context) -> HighlightRenderer.show(payload));
+        WorldRenderEvents.AFTER_TRANSLUCENT.register(HighlightRenderer::render);
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> HighlightRenderer.clear());
+    }
+}
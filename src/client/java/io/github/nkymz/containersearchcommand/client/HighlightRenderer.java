@@ -0,0 +1,68 @@
+package io.github.nkymz.containersearchcommand.client;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+import io.github.nkymz.containersearchcommand.HighlightPayload;
+import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderContext;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gl.ShaderProgramKeys;
+import net.minecraft.client.render.BufferBuilder;
+import net.minecraft.client.render.BufferRenderer;
+import net.minecraft.client.render.Tessellator;
+import net.minecraft.client.render.VertexFormat;
+import net.minecraft.client.render.VertexFormats;
+import net.minecraft.client.render.VertexRendering;
+import net.minecraft.client.util.math.MatrixStack;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.World;
+
+/**
+ * 在客户端绘制搜索结果的方框。关闭深度测试，隔着墙也能看到，和原来发光的展示实体效果一致。
+ * 只有收到坐标的这个玩家看得到，到期或切换维度后自动消失。
+ */
+public class HighlightRenderer {
+
+    private static long[] positions = new long[0];
+    private static long expireNanos = 0;
+    // 坐标所在的维度，切换维度后同样的坐标指向另一个世界
+    private static RegistryKey<World> dimension;
+
+    public static void show(HighlightPayload payload) {
+        MinecraftClient client = MinecraftClient.getInstance();
+        dimension = client.world != null ? client.world.getRegistryKey() : null;
+        positions = payload.positions();
+        expireNanos = System.nanoTime() + payload.durationTicks() * 50_000_000L;
+    }
+
+    public static void clear() {
+        positions = new long[0];
+    }
+
+    static void render(WorldRenderContext context) {
+        if (positions.length == 0) return;
+        if (System.nanoTime() > expireNanos || !context.world().getRegistryKey().equals(dimension)) {
+            clear();
+            return;
+        }
+
+        Vec3d camera = context.camera().getPos();
+        MatrixStack matrices = new MatrixStack();
+        matrices.translate(-camera.x, -camera.y, -camera.z);
+
+        BufferBuilder buffer = Tessellator.getInstance().begin(VertexFormat.DrawMode.LINES, VertexFormats.LINES);
+        for (long pos : positions) {
+            // 比方块稍大一点，不和方块本身的边线重叠
+            Box box = new Box(BlockPos.fromLong(pos)).expand(0.002);
+            VertexRendering.drawBox(matrices, buffer, box, 1.0f, 0.85f, 0.2f, 1.0f);
+        }
+
+        RenderSystem.setShader(ShaderProgramKeys.RENDERTYPE_LINES);
+        RenderSystem.lineWidth(2.0f);
+        RenderSystem.disableDepthTest();
+        BufferRenderer.drawWithGlobalProgram(buffer.end());
+        RenderSystem.enableDepthTest();
+        RenderSystem.lineWidth(1.0f);
+    }
+}
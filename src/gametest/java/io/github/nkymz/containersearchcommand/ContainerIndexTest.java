@@ -0,0 +1,53 @@
+package io.github.nkymz.containersearchcommand;
+
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.entity.AbstractFurnaceBlockEntity;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.test.GameTest;
+import net.minecraft.test.GameTestException;
+import net.minecraft.test.TestContext;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * 容器索引的记脏：容器内容在 tick 中变化 (不经过玩家操作) 时，索引也要重新扫描
+ */
+public class ContainerIndexTest implements FabricGameTest {
+
+    /**
+     * 熔炉烧好的产物只经过静态的 BlockEntity.markDirty，索引仍应查到
+     */
+    @GameTest(templateName = EMPTY_STRUCTURE, tickLimit = 400)
+    public void smeltedOutputIsIndexed(TestContext context) {
+        BlockPos relative = new BlockPos(1, 1, 1);
+        BlockPos pos = context.getAbsolutePos(relative);
+        context.setBlockState(relative, Blocks.FURNACE);
+        AbstractFurnaceBlockEntity furnace = context.getBlockEntity(relative);
+        furnace.setStack(0, new ItemStack(Items.RAW_IRON));
+        furnace.setStack(1, new ItemStack(Items.COAL));
+
+        // 先建立索引，此时熔炉里还没有铁锭
+        ContainerIndex index = ContainerIndex.get(context.getWorld());
+        BlockBox box = new BlockBox(pos);
+        index.refreshChunk(pos.getX() >> 4, pos.getZ() >> 4, box);
+        if (hits(index, pos, box, Items.IRON_INGOT) != 0) throw new GameTestException("Iron ingot indexed before smelting");
+
+        context.succeedWhen(() -> {
+            if (furnace.getStack(2).isEmpty()) throw new GameTestException("Waiting for smelting");
+
+            index.refreshChunk(pos.getX() >> 4, pos.getZ() >> 4, box);
+            if (hits(index, pos, box, Items.IRON_INGOT) != 1) throw new GameTestException("Smelted iron ingot not found in the index");
+        });
+    }
+
+    private static int hits(ContainerIndex index, BlockPos pos, BlockBox box, Item item) {
+        int[] count = new int[1];
+        index.forEachHit(Item.getRawId(item), pos.getX() >> 4, pos.getZ() >> 4, box, (hitPos, block, hitCount, nested) -> {
+            if (hitPos.equals(pos)) count[0] += hitCount;
+        });
+        return count[0];
+    }
+}
@@ -0,0 +1,293 @@
+package io.github.nkymz.containersearchcommand;
+
+import com.mojang.authlib.GameProfile;
+import net.fabricmc.fabric.api.entity.FakePlayer;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+import net.minecraft.block.Blocks;
+import net.minecraft.component.DataComponentTypes;
+import net.minecraft.component.type.BundleContentsComponent;
+import net.minecraft.component.type.ContainerComponent;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.test.GameTest;
+import net.minecraft.test.GameTestException;
+import net.minecraft.test.TestContext;
+import net.minecraft.util.math.BlockPos;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * /fr 的负载测试，在 Fabric gametest 的无界面服务器上运行：./gradlew runGametest。
+ * <p>
+ * 每个测试在测试位置周围生成一片强制加载的区块，按给定密度放置装满物品的箱子 (可选潜影盒、收纳袋嵌套)，
+ * 再让若干假玩家分几轮、同一 tick 内一起执行 /fr，等所有搜索结束后记录：
+ * <ul>
+ *     <li>搜索耗时 p50/p99 (从提交到出结果) 和其中占用主线程的时间，来自 {@link SearchStats}</li>
+ *     <li>负载期间整个服务器 tick 的耗时 p50/p99/最大，用来看搜索对 TPS 的影响</li>
+ * </ul>
+ * 结果写入日志，并以 JSON 行追加到运行目录的 containersearch-load.jsonl。
+ * 规模可以用系统属性覆盖 (containersearch.load.&lt;参数&gt;，见 {@link Workload#fromProperties})；
+ * 设置 containersearch.load.maxP99Millis 后，p99 超出即判定测试失败，用于在发布前发现性能回退。
+ */
+public class SearchLoadTest implements FabricGameTest {
+
+    private static final String RESULTS_FILE = "containersearch-load.jsonl";
+    private static final Item[] POOL = {Items.COBBLESTONE, Items.DIRT, Items.OAK_LOG, Items.IRON_INGOT, Items.REDSTONE,
+            Items.GOLD_INGOT, Items.COAL, Items.STRING, Items.BONE, Items.ARROW};
+
+    // 负载期间每个服务器 tick 的耗时
+    private static SearchStats.Histogram tickTime;
+    private static long tickStart;
+
+    static {
+        ServerTickEvents.START_SERVER_TICK.register(server -> tickStart = System.nanoTime());
+        ServerTickEvents.END_SERVER_TICK.register(server -> {
+            if (tickTime != null) tickTime.record(System.nanoTime() - tickStart);
+        });
+    }
+
+    /**
+     * 一次负载的规模
+     *
+     * @param areaRadius       生成容器的区域半径 (格)
+     * @param containersPerChunk 每个区块的箱子数，最多 256
+     * @param nested           是否在箱子里放装着东西的潜影盒、收纳袋
+     * @param players          每轮同时搜索的玩家数
+     * @param rounds           轮数，每轮用一批新的假玩家，避免同一玩家的新搜索取代旧搜索
+     * @param roundInterval    两轮之间的间隔 (tick)
+     * @param searchRadius     /fr 的搜索半径
+     */
+    record Workload(String name, int areaRadius, int containersPerChunk, boolean nested,
+                    int players, int rounds, int roundInterval, int searchRadius) {
+
+        Workload fromProperties() {
+            return new Workload(name,
+                    Integer.getInteger(property("areaRadius"), areaRadius),
+                    Math.min(256, Integer.getInteger(property("containersPerChunk"), containersPerChunk)),
+                    Boolean.parseBoolean(System.getProperty(property("nested"), String.valueOf(nested))),
+                    Integer.getInteger(property("players"), players),
+                    Integer.getInteger(property("rounds"), rounds),
+                    Integer.getInteger(property("roundInterval"), roundInterval),
+                    Integer.getInteger(property("searchRadius"), searchRadius));
+        }
+
+        private String property(String key) {
+            return "containersearch.load." + name + "." + key;
+        }
+    }
+
+    @GameTest(templateName = EMPTY_STRUCTURE, batchId = "containersearch_sparse", tickLimit = 12000)
+    public void sparseConcurrentSearches(TestContext context) {
+        run(context, new Workload("sparse", 64, 4, false, 16, 3, 20, 48).fromProperties());
+    }
+
+    @GameTest(templateName = EMPTY_STRUCTURE, batchId = "containersearch_dense", tickLimit = 12000)
+    public void denseNestedSearches(TestContext context) {
+        run(context, new Workload("dense", 96, 48, true, 32, 3, 20, 80).fromProperties());
+    }
+
+    private void run(TestContext context, Workload workload) {
+        ServerWorld world = context.getWorld();
+        MinecraftServer server = world.getServer();
+        BlockPos center = context.getAbsolutePos(BlockPos.ORIGIN);
+
+        // 搜索的限制按负载测试的需要放开，结束后恢复
+        SearchConfig config = ContainerSearchCommand.CONFIG;
+        int cooldown = config.searchCooldownSeconds;
+        long maxCost = config.maxSearchCost;
+        int maxQueued = config.maxQueuedSearches;
+        config.searchCooldownSeconds = 0;
+        config.maxSearchCost = 0;
+        config.maxQueuedSearches = Integer.MAX_VALUE;
+
+        List<BlockPos> placed = generate(world, center, workload);
+        int expected = workload.players() * workload.rounds();
+
+        // 只统计本次负载的搜索；原地清零，索引持有的是同一个对象
+        SearchStats stats = SearchStats.get(world);
+        stats.reset();
+        tickTime = new SearchStats.Histogram();
+
+        Random random = new Random(7);
+        for (int round = 0; round < workload.rounds(); round++) {
+            List<ServerPlayerEntity> players = new ArrayList<>();
+            for (int i = 0; i < workload.players(); i++) {
+                String name = "fr_" + workload.name() + "_" + round + "_" + i;
+                ServerPlayerEntity player = FakePlayer.get(world, new GameProfile(UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)), name));
+                // 玩家分布在仓库区域内，搜索范围互相重叠
+                player.refreshPositionAndAngles(
+                        center.getX() + random.nextInt(workload.areaRadius() + 1) - workload.areaRadius() / 2.0,
+                        center.getY() + 1,
+                        center.getZ() + random.nextInt(workload.areaRadius() + 1) - workload.areaRadius() / 2.0,
+                        0.0f, 0.0f);
+                players.add(player);
+            }
+
+            // 同一轮的搜索在同一 tick 内提交
+            context.waitAndRun((long) round * workload.roundInterval() + 1, () -> {
+                for (ServerPlayerEntity player : players) {
+                    server.getCommandManager().executeWithPrefix(player.getCommandSource(), "fr diamond " + workload.searchRadius());
+                }
+            });
+        }
+
+        // 最终任务抛出异常时每个 tick 重试：等待的判断可以重复执行，输出结果和断言只执行一次
+        String[] failure = new String[1];
+        context.addFinalTask(() -> {
+            long done = stats.queries.sum() + stats.rejected.sum();
+            if (done < expected) throw new GameTestException("Waiting for searches: " + done + "/" + expected);
+
+            if (failure[0] == null) {
+                SearchStats.Histogram ticks = tickTime;
+                tickTime = null;
+                config.searchCooldownSeconds = cooldown;
+                config.maxSearchCost = maxCost;
+                config.maxQueuedSearches = maxQueued;
+                clear(world, center, workload, placed);
+
+                report(workload, placed.size(), stats, ticks);
+                String reason = check(stats);
+                failure[0] = reason != null ? reason : "";
+                // 最终任务失败要等到超时才会报告，改由延时任务抛出，测试立即失败
+                if (reason != null) {
+                    context.waitAndRun(1, () -> {
+                        throw new GameTestException(reason);
+                    });
+                }
+            }
+            if (!failure[0].isEmpty()) throw new GameTestException(failure[0]);
+        });
+    }
+
+    /**
+     * @return 失败原因，通过时为 null
+     */
+    private static String check(SearchStats stats) {
+        if (stats.rejected.sum() > 0) return stats.rejected.sum() + " searches were rejected";
+        if (stats.hits.sum() == 0) return "No search found any diamonds";
+
+        double maxP99 = Double.parseDouble(System.getProperty("containersearch.load.maxP99Millis", "0"));
+        double p99 = stats.wallTime.percentileMillis(0.99);
+        if (maxP99 > 0 && p99 > maxP99) {
+            return String.format("Search p99 %.2f ms exceeds the limit of %.2f ms", p99, maxP99);
+        }
+        return null;
+    }
+
+    /**
+     * 强制加载区域内的区块，按密度放置箱子：每个区块内按 2 格间距的网格摆放 (避免相邻箱子合并成大箱子)，
+     * 一层 64 个，放满后往上叠一层。大约八分之一的箱子里有钻石
+     */
+    private static List<BlockPos> generate(ServerWorld world, BlockPos center, Workload workload) {
+        Random random = new Random(42);
+        List<BlockPos> placed = new ArrayList<>();
+        int radius = workload.areaRadius();
+
+        for (int cz = (center.getZ() - radius) >> 4; cz <= (center.getZ() + radius) >> 4; cz++) {
+            for (int cx = (center.getX() - radius) >> 4; cx <= (center.getX() + radius) >> 4; cx++) {
+                world.setChunkForced(cx, cz, true);
+
+                for (int i = 0; i < workload.containersPerChunk(); i++) {
+                    BlockPos pos = new BlockPos((cx << 4) + (i % 8) * 2, center.getY() + 2 + i / 64 * 2, (cz << 4) + (i / 8 % 8) * 2);
+                    world.setBlockState(pos, Blocks.CHEST.getDefaultState());
+                    if (!(world.getBlockEntity(pos) instanceof Inventory inventory)) continue;
+
+                    fill(inventory, random, workload.nested());
+                    placed.add(pos);
+                }
+            }
+        }
+        return placed;
+    }
+
+    private static void fill(Inventory inventory, Random random, boolean nested) {
+        boolean diamonds = random.nextInt(8) == 0;
+        for (int slot = 0; slot < inventory.size(); slot++) {
+            // 大约三分之一的格子为空
+            if (random.nextInt(3) == 0) continue;
+
+            if (diamonds && slot == 0) {
+                inventory.setStack(slot, new ItemStack(Items.DIAMOND, 1 + random.nextInt(64)));
+            } else if (nested && random.nextInt(6) == 0) {
+                inventory.setStack(slot, nestedStack(random, random.nextInt(4) == 0));
+            } else {
+                Item item = POOL[random.nextInt(POOL.length)];
+                inventory.setStack(slot, new ItemStack(item, 1 + random.nextInt(item.getMaxCount())));
+            }
+        }
+    }
+
+    /**
+     * 装满物品的潜影盒，其中混有装着东西的收纳袋，形成两到三层嵌套
+     */
+    private static ItemStack nestedStack(Random random, boolean withDiamonds) {
+        List<ItemStack> contents = new ArrayList<>();
+        for (int i = 0; i < 27; i++) {
+            if (random.nextInt(4) == 0) {
+                ItemStack bundle = new ItemStack(Items.BUNDLE);
+                bundle.set(DataComponentTypes.BUNDLE_CONTENTS, new BundleContentsComponent(List.of(
+                        new ItemStack(withDiamonds ? Items.DIAMOND : POOL[random.nextInt(POOL.length)], 8),
+                        new ItemStack(POOL[random.nextInt(POOL.length)], 8))));
+                contents.add(bundle);
+            } else {
+                Item item = POOL[random.nextInt(POOL.length)];
+                contents.add(new ItemStack(item, 1 + random.nextInt(item.getMaxCount())));
+            }
+        }
+        ItemStack shulker = new ItemStack(Items.SHULKER_BOX);
+        shulker.set(DataComponentTypes.CONTAINER, ContainerComponent.fromStacks(contents));
+        return shulker;
+    }
+
+    /**
+     * 清空并移除生成的箱子 (先清空，移除时不会掉落物品)，取消强制加载
+     */
+    private static void clear(ServerWorld world, BlockPos center, Workload workload, List<BlockPos> placed) {
+        for (BlockPos pos : placed) {
+            if (world.getBlockEntity(pos) instanceof Inventory inventory) inventory.clear();
+            world.setBlockState(pos, Blocks.AIR.getDefaultState());
+        }
+
+        int radius = workload.areaRadius();
+        for (int cz = (center.getZ() - radius) >> 4; cz <= (center.getZ() + radius) >> 4; cz++) {
+            for (int cx = (center.getX() - radius) >> 4; cx <= (center.getX() + radius) >> 4; cx++) {
+                world.setChunkForced(cx, cz, false);
+            }
+        }
+    }
+
+    private static void report(Workload workload, int containers, SearchStats stats, SearchStats.Histogram ticks) {
+        String line = String.format(
+                "{\"workload\":\"%s\",\"containers\":%d,\"nested\":%b,\"players\":%d,\"rounds\":%d,\"searchRadius\":%d,"
+                        + "\"searches\":%d,\"hits\":%d,\"chunks\":%d,\"inventories\":%d,"
+                        + "\"wallP50Ms\":%.2f,\"wallP99Ms\":%.2f,\"mainThreadP50Ms\":%.2f,\"mainThreadP99Ms\":%.2f,"
+                        + "\"tickP50Ms\":%.2f,\"tickP99Ms\":%.2f}",
+                workload.name(), containers, workload.nested(), workload.players(), workload.rounds(), workload.searchRadius(),
+                stats.queries.sum(), stats.hits.sum(), stats.chunksVisited.sum(), stats.inventoriesScanned.sum(),
+                stats.wallTime.percentileMillis(0.5), stats.wallTime.percentileMillis(0.99),
+                stats.mainThreadTime.percentileMillis(0.5), stats.mainThreadTime.percentileMillis(0.99),
+                ticks.percentileMillis(0.5), ticks.percentileMillis(0.99));
+
+        ContainerSearchCommand.LOGGER.info("Search load {}: {}", workload.name(), line);
+        try {
+            Files.writeString(Path.of(RESULTS_FILE), line + System.lineSeparator(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            ContainerSearchCommand.LOGGER.warn("Failed to write {}", RESULTS_FILE, e);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package io.github.nkymz.containersearchcommand;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockEntityProvider;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.component.DataComponentTypes;
+import net.minecraft.component.type.BundleContentsComponent;
+import net.minecraft.component.type.ContainerComponent;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.registry.Registries;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.HeightLimitView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 搜索热路径的基准测试，用来验证 SearchCommand 里各条“优化”注释的实际效果并发现回退。
+ * <p>
+ * 在合成的区块布局上比较：
+ * <ul>
+ *     <li>legacyScan：旧版对每个容器做的事，预处理过的过滤关键词加 for 循环版 scanInventory</li>
+ *     <li>indexRescan：索引的冷路径，每个容器都是脏的，抓快照、汇总、压缩成 {@link ItemCounts}</li>
+ *     <li>indexQuery：索引的热路径，容器都没有变化，只做一次查找</li>
+ *     <li>legacyWalk：旧版 executeSearch 的整个区块遍历，逐个区块遍历方块实体、判断范围、扫描容器</li>
+ *     <li>indexWalk：现在单个搜索的区块遍历，按 {@link SearchArea} 的区块顺序刷新脏容器 (这里都是干净的) 并查倒排表</li>
+ * </ul>
+ * 区块遍历的两项用真实的方块实体和 {@link ContainerIndex}，半径同时决定区块数和容器数；
+ * 没有世界，区块是否加载的判断换成了查表，实体不参与。
+ * 运行 ./gradlew jmh，开启了 gc profiler，同时报告 ops/s 和每次操作的分配量。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SearchBenchmark {
+
+    private static final Block[] CONTAINER_BLOCKS = {Blocks.CHEST, Blocks.BARREL, Blocks.TRAPPED_CHEST, Blocks.HOPPER};
+
+    @Param({"10", "50", "75"})
+    public int radius;
+
+    // SPARSE：每个区块 2 个容器；DENSE：每个区块 48 个 (仓库)
+    @Param({"SPARSE", "DENSE"})
+    public String layout;
+
+    // 是否在容器里放装满东西的潜影盒、收纳袋
+    @Param({"false", "true"})
+    public boolean nested;
+
+    // 容器名过滤器，空字符串表示不过滤
+    @Param({"", "chest"})
+    public String filter;
+
+    private static final int CENTER_Y = 64;
+    private static final HeightLimitView HEIGHT = HeightLimitView.create(-64, 384);
+
+    private Item target;
+    private int targetId;
+    // 旧版预处理过的过滤关键词：去掉命名空间、转小写
+    private String legacyFilterKey;
+    private ContainerFilter containerFilter;
+
+    private long[] positions;
+    private Block[] blocks;
+    private Inventory[] inventories;
+    // indexQuery 用的预先汇总好的统计
+    private ItemCounts[] counts;
+
+    // legacyWalk 用：区块 → 该区块的方块实体，相当于 chunk.getBlockEntities()
+    private final Long2ObjectOpenHashMap<Map<BlockPos, BlockEntity>> chunkBlockEntities = new Long2ObjectOpenHashMap<>();
+    // indexWalk 用：填好所有容器的索引和以原点为中心的搜索范围
+    private ContainerIndex index;
+    private SearchArea area;
+
+    private final ItemCountTable table = new ItemCountTable();
+    private final NestingStack stack = new NestingStack();
+
+    @Setup
+    public void setup() {
+        SharedConstants.createGameVersion();
+        Bootstrap.initialize();
+
+        target = Items.DIAMOND;
+        targetId = Item.getRawId(target);
+        legacyFilterKey = filter.isEmpty() ? null : (filter.contains(":") ? filter.split(":")[1] : filter).toLowerCase();
+        containerFilter = filter.isEmpty() ? null : ContainerFilter.parse(filter);
+
+        Random random = new Random(42);
+        Item[] pool = {Items.COBBLESTONE, Items.DIRT, Items.OAK_LOG, Items.IRON_INGOT, Items.REDSTONE,
+                Items.GOLD_INGOT, Items.COAL, Items.STRING, Items.BONE, Items.ARROW, Items.DIAMOND};
+
+        int chunksPerSide = (2 * radius) / 16 + 1;
+        int perChunk = layout.equals("DENSE") ? 48 : 2;
+        int total = chunksPerSide * chunksPerSide * perChunk;
+
+        positions = new long[total];
+        blocks = new Block[total];
+        inventories = new Inventory[total];
+        counts = new ItemCounts[total];
+        index = new ContainerIndex(null, new SearchStats("benchmark"));
+        area = new SearchArea(SearchArea.Shape.CUBE, new BlockPos(0, CENTER_Y, 0), radius, HEIGHT);
+
+        for (int i = 0; i < total; i++) {
+            int chunk = i / perChunk;
+            int x = (chunk % chunksPerSide) * 16 + random.nextInt(16) - radius;
+            int z = (chunk / chunksPerSide) * 16 + random.nextInt(16) - radius;
+            int y = CENTER_Y + random.nextInt(2 * radius + 1) - radius;
+            BlockPos pos = new BlockPos(x, y, z);
+            positions[i] = pos.asLong();
+            blocks[i] = CONTAINER_BLOCKS[random.nextInt(CONTAINER_BLOCKS.length)];
+
+            // 真实的方块实体，不放进世界，getStack 等调用和旧版一样经过战利品表检查
+            BlockEntity blockEntity = ((BlockEntityProvider) blocks[i]).createBlockEntity(pos, blocks[i].getDefaultState());
+            Inventory inventory = (Inventory) blockEntity;
+            for (int slot = 0; slot < inventory.size(); slot++) {
+                // 大约三分之一的格子为空
+                if (random.nextInt(3) == 0) continue;
+                if (nested && random.nextInt(6) == 0) {
+                    inventory.setStack(slot, nestedStack(random, pool));
+                } else {
+                    Item item = pool[random.nextInt(pool.length)];
+                    inventory.setStack(slot, new ItemStack(item, 1 + random.nextInt(item.getMaxCount())));
+                }
+            }
+            inventories[i] = inventory;
+
+            table.clear();
+            ContainerSnapshot.capture(positions[i], blocks[i], inventory).aggregate(table, stack);
+            counts[i] = table.freeze();
+
+            long chunkKey = ChunkPos.toLong(x >> 4, z >> 4);
+            chunkBlockEntities.computeIfAbsent(chunkKey, k -> new HashMap<>()).put(pos, blockEntity);
+            index.put(positions[i], chunkKey, blocks[i], counts[i]);
+        }
+    }
+
+    /**
+     * 装满物品的潜影盒，其中混有装着东西的收纳袋，形成两到三层嵌套
+     */
+    private static ItemStack nestedStack(Random random, Item[] pool) {
+        List<ItemStack> contents = new ArrayList<>();
+        for (int i = 0; i < 27; i++) {
+            if (random.nextInt(4) == 0) {
+                ItemStack bundle = new ItemStack(Items.BUNDLE);
+                bundle.set(DataComponentTypes.BUNDLE_CONTENTS, new BundleContentsComponent(List.of(
+                        new ItemStack(pool[random.nextInt(pool.length)], 8),
+                        new ItemStack(pool[random.nextInt(pool.length)], 8))));
+                contents.add(bundle);
+            } else {
+                Item item = pool[random.nextInt(pool.length)];
+                contents.add(new ItemStack(item, 1 + random.nextInt(item.getMaxCount())));
+            }
+        }
+        ItemStack shulker = new ItemStack(Items.SHULKER_BOX);
+        shulker.set(DataComponentTypes.CONTAINER, ContainerComponent.fromStacks(contents));
+        return shulker;
+    }
+
+    @Benchmark
+    public void legacyScan(Blackhole blackhole) {
+        for (int i = 0; i < inventories.length; i++) {
+            if (legacyFilterKey != null) {
+                String blockId = Registries.BLOCK.getId(blocks[i]).getPath();
+                if (!blockId.contains(legacyFilterKey)) continue;
+            }
+
+            int count = legacyScanInventory(inventories[i], target);
+            if (count > 0) blackhole.consume(count);
+        }
+    }
+
+    @Benchmark
+    public void indexRescan(Blackhole blackhole) {
+        for (int i = 0; i < inventories.length; i++) {
+            table.clear();
+            ContainerSnapshot.capture(positions[i], blocks[i], inventories[i]).aggregate(table, stack);
+            ItemCounts frozen = table.freeze();
+            emit(blackhole, i, frozen);
+        }
+    }
+
+    @Benchmark
+    public void indexQuery(Blackhole blackhole) {
+        for (int i = 0; i < counts.length; i++) {
+            emit(blackhole, i, counts[i]);
+        }
+    }
+
+    /**
+     * 旧版 executeSearch 的区块遍历，只把区块加载判断和 world.getChunk 换成了查表
+     */
+    @Benchmark
+    public void legacyWalk(Blackhole blackhole) {
+        int minChunkX = -radius >> 4;
+        int maxChunkX = radius >> 4;
+        int minChunkZ = -radius >> 4;
+        int maxChunkZ = radius >> 4;
+
+        int minX = -radius;
+        int maxX = radius;
+        int minY = CENTER_Y - radius;
+        int maxY = CENTER_Y + radius;
+        int minZ = -radius;
+        int maxZ = radius;
+
+        for (int cx = minChunkX; cx <= maxChunkX; cx++) {
+            for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
+                Map<BlockPos, BlockEntity> blockEntities = chunkBlockEntities.get(ChunkPos.toLong(cx, cz));
+                if (blockEntities == null) continue;
+
+                for (BlockEntity blockEntity : blockEntities.values()) {
+                    BlockPos pos = blockEntity.getPos();
+                    if (pos.getX() < minX || pos.getX() > maxX ||
+                            pos.getY() < minY || pos.getY() > maxY ||
+                            pos.getZ() < minZ || pos.getZ() > maxZ) {
+                        continue;
+                    }
+
+                    if (blockEntity instanceof Inventory inventory) {
+                        if (legacyFilterKey != null) {
+                            String blockId = Registries.BLOCK.getId(blockEntity.getCachedState().getBlock()).getPath();
+                            if (!blockId.contains(legacyFilterKey)) continue;
+                        }
+
+                        int count = legacyScanInventory(inventory, target);
+                        if (count > 0) blackhole.consume(count);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 单个搜索在 {@link SearchBatch#runSlice} 中对每个已加载区块做的事 (串行模式、不查实体)
+     */
+    @Benchmark
+    public void indexWalk(Blackhole blackhole) {
+        for (int i = 0; i < area.chunkCount(); i++) {
+            int cx = area.chunkX(i);
+            int cz = area.chunkZ(i);
+            BlockBox box = area.chunkBox(cx, cz);
+
+            index.refreshChunk(cx, cz, box);
+            index.forEachHit(targetId, cx, cz, box, (pos, block, count, nested) -> {
+                if (!area.contains(pos.asLong())) return;
+                if (containerFilter != null && !containerFilter.matches(block)) return;
+                blackhole.consume(count);
+            });
+        }
+    }
+
+    private void emit(Blackhole blackhole, int i, ItemCounts frozen) {
+        int count = frozen.get(targetId);
+        if (count == 0) return;
+        if (containerFilter != null && !containerFilter.matches(blocks[i])) return;
+        blackhole.consume(count);
+    }
+
+    /**
+     * 基线版本 SearchCommand.scanInventory (for 循环版) 的原样拷贝，作为对照
+     */
+    private static int legacyScanInventory(Inventory inventory, Item targetItem) {
+        int totalCount = 0;
+        int size = inventory.size();
+
+        for (int i = 0; i < size; i++) {
+            ItemStack stack = inventory.getStack(i);
+            if (stack.isEmpty()) continue;
+
+            if (stack.isOf(targetItem)) {
+                totalCount += stack.getCount();
+            }
+
+            ContainerComponent containerData = stack.get(DataComponentTypes.CONTAINER);
+            if (containerData != null) {
+                for (ItemStack innerStack : containerData.iterateNonEmpty()) {
+                    if (innerStack.isOf(targetItem)) {
+                        totalCount += innerStack.getCount();
+                    }
+                }
+            }
+
+            BundleContentsComponent bundleData = stack.get(DataComponentTypes.BUNDLE_CONTENTS);
+            if (bundleData != null) {
+                for (int j = 0; j < bundleData.size(); j++) {
+                    ItemStack innerStack = bundleData.get(j);
+                    if (innerStack.isOf(targetItem)) {
+                        totalCount += innerStack.getCount();
+                    }
+                }
+            }
+        }
+        return totalCount;
+    }
+}
@@ -0,0 +1,305 @@
+package io.github.nkymz.containersearchcommand;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.text.MutableText;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.ChunkPos;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * /fr census：统计全服所有已加载容器中某种物品的总数，按维度和区域 (32×32 区块，即一个 .mca 文件) 汇总。
+ * <p>
+ * 在后台按 tick 预算逐个区块推进，和普通搜索一样经过容器索引，只访问有容器的区块。
+ * 同一时间只有一个普查；关服时进度写入存档目录，下次启动后从中断的区块继续。
+ */
+public class Census {
+
+    private static final String FILE_NAME = ContainerSearchCommand.MOD_ID + "_census.properties";
+    // 完成后每个维度显示的区域数
+    private static final int TOP_REGIONS = 5;
+
+    // 进行中或最近一次完成的普查
+    private static Census current;
+
+    private final String input;
+    private final ItemQuery query;
+    // 发起普查的玩家，从控制台发起时为 null，结果输出到控制台
+    private final UUID starter;
+    // 开始时按 server.getWorlds() 的顺序记录的维度 id
+    private final List<Identifier> worldIds;
+    private final long[] totals;
+    // 每个维度：区域 (ChunkPos.toLong(regionX, regionZ)) → 数量
+    private final Long2LongOpenHashMap[] regions;
+
+    private int worldIndex = 0;
+    // 当前维度要处理的区块，进入该维度时才生成
+    private long[] chunks;
+    private int chunkIndex = 0;
+    // 当前维度最后处理完的区块，区块列表按坐标排序，中断后从它之后继续
+    private long lastChunk = Long.MIN_VALUE;
+    private long chunksDone = 0;
+    private boolean done = false;
+    private int lastProgressTick = -1;
+
+    private Census(String input, ItemQuery query, UUID starter, List<Identifier> worldIds) {
+        this.input = input;
+        this.query = query;
+        this.starter = starter;
+        this.worldIds = worldIds;
+        this.totals = new long[worldIds.size()];
+        this.regions = new Long2LongOpenHashMap[worldIds.size()];
+        for (int i = 0; i < regions.length; i++) regions[i] = new Long2LongOpenHashMap();
+    }
+
+    /**
+     * 开始新的普查，取代之前的普查
+     */
+    public static void start(MinecraftServer server, String input, ItemQuery query, UUID starter) {
+        List<Identifier> worldIds = new ArrayList<>();
+        for (ServerWorld world : server.getWorlds()) worldIds.add(world.getRegistryKey().getValue());
+        current = new Census(input, query, starter, worldIds);
+    }
+
+    public static boolean stop() {
+        boolean running = current != null && !current.done;
+        current = null;
+        return running;
+    }
+
+    public static void clear() {
+        current = null;
+    }
+
+    public static void tick(MinecraftServer server) {
+        if (current == null || current.done) return;
+
+        long deadline = System.nanoTime() + ContainerSearchCommand.CONFIG.censusBudgetNanos();
+        try {
+            current.run(server, deadline);
+        } catch (Exception e) {
+            ContainerSearchCommand.LOGGER.error("Census failed", e);
+            current = null;
+        }
+    }
+
+    private void run(MinecraftServer server, long deadline) {
+        while (System.nanoTime() < deadline) {
+            if (worldIndex >= worldIds.size()) {
+                finish(server);
+                return;
+            }
+
+            ServerWorld world = server.getWorld(RegistryKey.of(RegistryKeys.WORLD, worldIds.get(worldIndex)));
+            if (world == null) {
+                nextWorld();
+                continue;
+            }
+
+            ContainerIndex index = ContainerIndex.get(world);
+            if (chunks == null) {
+                chunks = index.loadedContainerChunks();
+                // 恢复时跳过已经处理过的区块
+                int found = Arrays.binarySearch(chunks, lastChunk);
+                chunkIndex = found >= 0 ? found + 1 : -found - 1;
+            }
+            if (chunkIndex >= chunks.length) {
+                nextWorld();
+                continue;
+            }
+
+            long chunkKey = chunks[chunkIndex++];
+            lastChunk = chunkKey;
+            chunksDone++;
+
+            int cx = ChunkPos.getPackedX(chunkKey);
+            int cz = ChunkPos.getPackedZ(chunkKey);
+            // 列表生成之后才卸载的区块直接跳过
+            if (!world.isChunkLoaded(cx, cz)) continue;
+
+            BlockBox box = new BlockBox(cx << 4, world.getBottomY(), cz << 4, (cx << 4) + 15, world.getTopYInclusive(), (cz << 4) + 15);
+            index.refreshChunk(cx, cz, box);
+
+            int slot = worldIndex;
+            long region = ChunkPos.toLong(cx >> 5, cz >> 5);
+            for (int rawId : query.rawIds) {
+                index.forEachHit(rawId, cx, cz, box, (pos, block, count, nested) -> {
+                    totals[slot] += count;
+                    regions[slot].addTo(region, count);
+                });
+            }
+        }
+        sendProgress(server);
+    }
+
+    private void nextWorld() {
+        worldIndex++;
+        chunks = null;
+        chunkIndex = 0;
+        lastChunk = Long.MIN_VALUE;
+    }
+
+    /**
+     * 进度显示在发起者的快捷栏上方，每秒最多一次
+     */
+    private void sendProgress(MinecraftServer server) {
+        int tick = server.getTicks();
+        if (starter == null || tick - lastProgressTick < 20) return;
+        lastProgressTick = tick;
+
+        ServerPlayerEntity player = server.getPlayerManager().getPlayer(starter);
+        if (player != null) player.sendMessage(Text.literal(progressLine()).formatted(Formatting.GRAY), true);
+    }
+
+    private void finish(MinecraftServer server) {
+        done = true;
+        long total = 0;
+        for (long count : totals) total += count;
+        ContainerSearchCommand.LOGGER.info("Census of {} finished: {} in {} chunks", input, total, chunksDone);
+
+        // 从控制台发起或发起者已下线时，结果输出到控制台
+        ServerPlayerEntity player = starter != null ? server.getPlayerManager().getPlayer(starter) : null;
+        if (player != null) {
+            player.sendMessage(describe());
+        } else {
+            server.sendMessage(describe());
+        }
+    }
+
+    private String progressLine() {
+        String chunkProgress = chunks != null ? "，当前维度 " + chunkIndex + "/" + chunks.length + " 个区块" : "";
+        return "普查中：维度 " + Math.min(worldIndex + 1, worldIds.size()) + "/" + worldIds.size() + chunkProgress + "，已处理 " + chunksDone + " 个区块";
+    }
+
+    /**
+     * /fr census 的输出：进度以及各维度的总数和数量最多的几个区域
+     */
+    public static Text describe() {
+        if (current == null) return Text.literal("没有进行中的普查。").formatted(Formatting.GRAY);
+        Census census = current;
+
+        MutableText message = Text.literal("普查 " + census.input + "：")
+                .append(census.done ? "已完成，共处理 " + census.chunksDone + " 个区块" : census.progressLine())
+                .formatted(Formatting.GRAY);
+
+        for (int i = 0; i < census.worldIds.size(); i++) {
+            message.append(Text.literal("\n" + census.worldIds.get(i) + " ").formatted(Formatting.GREEN))
+                    .append(Text.literal(String.valueOf(census.totals[i])).formatted(Formatting.GOLD));
+
+            List<Long2LongMap.Entry> top = new ArrayList<>(census.regions[i].long2LongEntrySet());
+            top.sort((a, b) -> Long.compare(b.getLongValue(), a.getLongValue()));
+            for (int j = 0; j < Math.min(TOP_REGIONS, top.size()); j++) {
+                long region = top.get(j).getLongKey();
+                message.append(Text.literal("\n  r." + ChunkPos.getPackedX(region) + "." + ChunkPos.getPackedZ(region) + ".mca: " + top.get(j).getLongValue())
+                        .formatted(Formatting.GRAY));
+            }
+        }
+        return message;
+    }
+
+    private static Path file(MinecraftServer server) {
+        return server.getSavePath(WorldSavePath.ROOT).resolve("data").resolve(FILE_NAME);
+    }
+
+    /**
+     * 关服时保存未完成的普查
+     */
+    public static void save(MinecraftServer server) {
+        if (current == null || current.done) return;
+        Census census = current;
+
+        Properties props = new Properties();
+        props.setProperty("input", census.input);
+        if (census.starter != null) props.setProperty("starter", census.starter.toString());
+        List<String> worlds = new ArrayList<>();
+        for (Identifier id : census.worldIds) worlds.add(id.toString());
+        props.setProperty("worlds", String.join(",", worlds));
+        props.setProperty("worldIndex", String.valueOf(census.worldIndex));
+        props.setProperty("lastChunk", String.valueOf(census.lastChunk));
+        props.setProperty("chunksDone", String.valueOf(census.chunksDone));
+        for (int i = 0; i < census.worldIds.size(); i++) {
+            props.setProperty("total." + i, String.valueOf(census.totals[i]));
+            for (Long2LongMap.Entry entry : census.regions[i].long2LongEntrySet()) {
+                props.setProperty("region." + i + "." + entry.getLongKey(), String.valueOf(entry.getLongValue()));
+            }
+        }
+
+        Path file = file(server);
+        try {
+            Files.createDirectories(file.getParent());
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                props.store(writer, "Container Search census in progress");
+            }
+        } catch (IOException e) {
+            ContainerSearchCommand.LOGGER.warn("Failed to save census progress to {}", file, e);
+        }
+    }
+
+    /**
+     * 启动时恢复上次中断的普查
+     */
+    public static void load(MinecraftServer server) {
+        Path file = file(server);
+        if (!Files.exists(file)) return;
+
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            props.load(reader);
+        } catch (IOException e) {
+            ContainerSearchCommand.LOGGER.warn("Failed to read census progress from {}", file, e);
+            return;
+        }
+
+        // 恢复成功之后才删除文件，解析失败时保留进度，修复后还能继续
+        try {
+            String input = props.getProperty("input");
+            List<Identifier> worldIds = new ArrayList<>();
+            for (String id : props.getProperty("worlds").split(",")) worldIds.add(Identifier.of(id));
+
+            String starter = props.getProperty("starter");
+            Census census = new Census(input, ItemQuery.parse(input, null), starter != null ? UUID.fromString(starter) : null, worldIds);
+            census.worldIndex = Integer.parseInt(props.getProperty("worldIndex"));
+            census.lastChunk = Long.parseLong(props.getProperty("lastChunk"));
+            census.chunksDone = Long.parseLong(props.getProperty("chunksDone"));
+            for (String key : props.stringPropertyNames()) {
+                String[] parts = key.split("\\.");
+                if (parts[0].equals("total")) {
+                    census.totals[Integer.parseInt(parts[1])] = Long.parseLong(props.getProperty(key));
+                } else if (parts[0].equals("region")) {
+                    census.regions[Integer.parseInt(parts[1])].put(Long.parseLong(parts[2]), Long.parseLong(props.getProperty(key)));
+                }
+            }
+            current = census;
+            ContainerSearchCommand.LOGGER.info("Resuming census of {} after {} chunks", input, census.chunksDone);
+        } catch (Exception e) {
+            ContainerSearchCommand.LOGGER.warn("Failed to resume census from {}", file, e);
+            return;
+        }
+
+        try {
+            Files.delete(file);
+        } catch (IOException e) {
+            ContainerSearchCommand.LOGGER.warn("Failed to delete {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package io.github.nkymz.containersearchcommand;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockEntityProvider;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.entity.EntityType;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.registry.tag.TagKey;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 容器类型过滤器，在解析指令时一次性展开成方块和实体类型 raw id 的位图，之后每个命中只需要一次位测试。
+ * <p>
+ * 支持逗号分隔的多个条件 (需要用引号括起来，如 "chest,#minecraft:shulker_boxes")：
+ * <ul>
+ *     <li>#命名空间:标签 —— 方块标签或实体类型标签</li>
+ *     <li>其他 —— 方块或实体类型 id 的路径部分包含该关键词 (与旧版的字符串过滤一致，命名空间被忽略)，
+ *     例如 minecart 会选中运输矿车和漏斗矿车</li>
+ * </ul>
+ */
+public final class ContainerFilter {
+
+    // 能放东西的容器方块及其 id，用于指令补全；方块注册表在游戏启动后不再变化，只计算一次
+    private static BitSet containerBlocks;
+    private static List<String> containerBlockIds;
+
+    private final BitSet blocks;
+    private final BitSet entityTypes;
+
+    private ContainerFilter(BitSet blocks, BitSet entityTypes) {
+        this.blocks = blocks;
+        this.entityTypes = entityTypes;
+    }
+
+    /**
+     * 解析过滤条件；有条件无法识别 (未知标签、没有任何方块匹配) 时抛出 IllegalArgumentException，消息为该条件
+     */
+    public static ContainerFilter parse(String input) {
+        BitSet bits = new BitSet(Registries.BLOCK.size());
+        BitSet entityBits = new BitSet(Registries.ENTITY_TYPE.size());
+
+        for (String part : input.split(",")) {
+            String term = part.trim().toLowerCase(Locale.ROOT);
+            if (term.isEmpty()) continue;
+
+            boolean matched = false;
+            if (term.startsWith("#")) {
+                Identifier id = Identifier.tryParse(term.substring(1));
+                if (id == null) throw new IllegalArgumentException(term);
+
+                TagKey<Block> tag = TagKey.of(RegistryKeys.BLOCK, id);
+                for (Block block : Registries.BLOCK) {
+                    if (block.getDefaultState().isIn(tag)) {
+                        bits.set(Registries.BLOCK.getRawId(block));
+                        matched = true;
+                    }
+                }
+                TagKey<EntityType<?>> entityTag = TagKey.of(RegistryKeys.ENTITY_TYPE, id);
+                for (EntityType<?> type : Registries.ENTITY_TYPE) {
+                    if (type.isIn(entityTag)) {
+                        entityBits.set(Registries.ENTITY_TYPE.getRawId(type));
+                        matched = true;
+                    }
+                }
+            } else {
+                // 【优化 1】 字符串预处理：用户输 minecraft:Chest -> 存成 chest
+                String key = term.contains(":") ? term.substring(term.indexOf(':') + 1) : term;
+                for (Block block : Registries.BLOCK) {
+                    if (Registries.BLOCK.getId(block).getPath().contains(key)) {
+                        bits.set(Registries.BLOCK.getRawId(block));
+                        matched = true;
+                    }
+                }
+                for (EntityType<?> type : Registries.ENTITY_TYPE) {
+                    if (Registries.ENTITY_TYPE.getId(type).getPath().contains(key)) {
+                        entityBits.set(Registries.ENTITY_TYPE.getRawId(type));
+                        matched = true;
+                    }
+                }
+            }
+            if (!matched) throw new IllegalArgumentException(term);
+        }
+        return new ContainerFilter(bits, entityBits);
+    }
+
+    public boolean matches(Block block) {
+        return blocks.get(Registries.BLOCK.getRawId(block));
+    }
+
+    public boolean matches(EntityType<?> type) {
+        return entityTypes.get(Registries.ENTITY_TYPE.getRawId(type));
+    }
+
+    /**
+     * 所有带物品栏的方块的 id 路径，例如 chest、barrel、shulker_box
+     */
+    public static synchronized List<String> containerBlockIds() {
+        if (containerBlockIds == null) {
+            BitSet bits = new BitSet(Registries.BLOCK.size());
+            List<String> ids = new ArrayList<>();
+            for (Block block : Registries.BLOCK) {
+                if (!(block instanceof BlockEntityProvider provider)) continue;
+                try {
+                    BlockEntity blockEntity = provider.createBlockEntity(BlockPos.ORIGIN, block.getDefaultState());
+                    if (blockEntity instanceof Inventory) {
+                        bits.set(Registries.BLOCK.getRawId(block));
+                        ids.add(Registries.BLOCK.getId(block).getPath());
+                    }
+                } catch (Exception e) {
+                    // 有些模组的方块实体不能脱离世界创建，忽略即可，只影响补全
+                }
+            }
+            containerBlocks = bits;
+            containerBlockIds = ids;
+        }
+        return containerBlockIds;
+    }
+
+    /**
+     * 至少包含一个容器方块的方块标签，用于指令补全。标签会随 /reload 变化，每次现算
+     */
+    public static List<String> containerTagIds() {
+        containerBlockIds();
+        List<String> ids = new ArrayList<>();
+        Registries.BLOCK.streamTags().forEach(named -> {
+            for (RegistryEntry<Block> entry : named) {
+                if (containerBlocks.get(Registries.BLOCK.getRawId(entry.value()))) {
+                    ids.add("#" + named.getTag().id());
+                    return;
+                }
+            }
+        });
+        return ids;
+    }
+}
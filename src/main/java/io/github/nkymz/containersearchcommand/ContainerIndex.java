@@ -0,0 +1,518 @@
+package io.github.nkymz.containersearchcommand;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.block.Block;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.chunk.WorldChunk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 每个 ServerWorld 一份的容器内容倒排索引：物品 raw id → 区块 → 容器坐标。
+ * <p>
+ * 容器变动 (markDirty) 非常频繁，漏斗每 8 tick 就会触发一次，所以变动时只记脏，
+ * 真正的重新扫描推迟到查询时，并且只扫描查询范围内的脏容器。
+ * 倒排表和脏集合都按区块分组，方便搜索任务按区块切片执行。
+ * <p>
+ * 索引同时是所有玩家共享的扫描结果缓存：区块卸载后条目作为冷缓存保留
+ * (卸载的区块不会变化)，重新加载时不必重扫；整体按区块做 LRU，超过内存上限时淘汰最久未查询的区块。
+ * 所有方法都只应在服务器主线程调用。
+ */
+public class ContainerIndex {
+
+    private static final Map<ServerWorld, ContainerIndex> INDEXES = new IdentityHashMap<>();
+
+    private final ServerWorld world;
+    private final SearchStats stats;
+    // 容器坐标 (BlockPos.asLong) → 该容器的内容统计
+    private final Long2ObjectOpenHashMap<Entry> entries = new Long2ObjectOpenHashMap<>();
+    // 倒排表：物品 raw id → 区块 (ChunkPos.toLong) → 含有该物品的容器坐标
+    private final Int2ObjectOpenHashMap<Long2ObjectOpenHashMap<LongOpenHashSet>> positionsByItem = new Int2ObjectOpenHashMap<>();
+    // 区块 → 等待重新扫描的容器坐标
+    private final Long2ObjectOpenHashMap<LongOpenHashSet> dirtyByChunk = new Long2ObjectOpenHashMap<>();
+    // 区块 → 缓存状态，按最近查询的顺序排列，队首最久未用
+    private final Long2ObjectLinkedOpenHashMap<ChunkState> chunks = new Long2ObjectLinkedOpenHashMap<>();
+    // 方块实体卸载事件先记在这里：方块被破坏要删条目，区块卸载则保留，要等区块卸载事件来了才分得清
+    private final LongOpenHashSet pendingRemovals = new LongOpenHashSet();
+    // 区块 → 并行模式下已抓取快照、还没写回的批次。这些容器已不在脏集合里，但条目仍是旧的
+    private final Long2ObjectOpenHashMap<List<Capture>> inFlight = new Long2ObjectOpenHashMap<>();
+    // 从磁盘索引映射进来、还没有解码的区块，第一次用到时才解码
+    private final Long2ObjectOpenHashMap<IndexStore.PersistedChunk> persisted = new Long2ObjectOpenHashMap<>();
+    // 条目占用内存的粗略估计 (字节)
+    private long memoryBytes = 0;
+    // 同步扫描复用的草稿表和嵌套展开栈
+    private final ItemCountTable scratch = new ItemCountTable();
+    private final NestingStack nestingStack = new NestingStack();
+
+    /**
+     * 基准测试直接构造不属于任何世界的索引 (world 为 null)，用 {@link #put} 填入条目后只走查询路径
+     */
+    ContainerIndex(ServerWorld world, SearchStats stats) {
+        this.world = world;
+        this.stats = stats;
+    }
+
+    public static ContainerIndex get(ServerWorld world) {
+        return INDEXES.computeIfAbsent(world, key -> new ContainerIndex(key, SearchStats.get(key)));
+    }
+
+    public static void remove(ServerWorld world) {
+        INDEXES.remove(world);
+    }
+
+    public static void clear() {
+        INDEXES.clear();
+    }
+
+    /**
+     * 每 tick 末尾调用：处理本 tick 内被破坏的容器
+     */
+    public static void tickAll() {
+        for (ContainerIndex index : INDEXES.values()) index.flushPendingRemovals();
+    }
+
+    public void markDirty(BlockPos pos) {
+        long chunkKey = ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4);
+        dirtyByChunk.computeIfAbsent(chunkKey, k -> new LongOpenHashSet()).add(pos.asLong());
+    }
+
+    public void onBlockEntityLoad(BlockPos pos) {
+        long key = pos.asLong();
+        long chunkKey = ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4);
+        pendingRemovals.remove(key);
+        restore(chunkKey);
+
+        // 区块重新加载时，冷缓存里的条目仍然有效，不需要重扫
+        ChunkState state = chunks.get(chunkKey);
+        if (state != null && entries.containsKey(key) && (state.unloaded || state.loadedTick == world.getServer().getTicks())) {
+            return;
+        }
+        markDirty(pos);
+    }
+
+    public void onBlockEntityUnload(BlockPos pos) {
+        ChunkState state = chunks.get(ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4));
+        if (state != null && state.unloaded) return;
+        pendingRemovals.add(pos.asLong());
+    }
+
+    public void onChunkUnload(WorldChunk chunk) {
+        long chunkKey = chunk.getPos().toLong();
+        ChunkState state = chunks.get(chunkKey);
+
+        // 随区块卸载的方块实体不是被破坏，不从索引中删除
+        LongIterator it = pendingRemovals.iterator();
+        while (it.hasNext()) {
+            long key = it.nextLong();
+            if (ChunkPos.toLong(BlockPos.unpackLongX(key) >> 4, BlockPos.unpackLongZ(key) >> 4) == chunkKey) it.remove();
+        }
+        if (state != null) state.unloaded = true;
+    }
+
+    /**
+     * 区块重新加载：核对冷缓存中的条目是否仍有对应的容器
+     */
+    public void onChunkLoad(WorldChunk chunk) {
+        long chunkKey = chunk.getPos().toLong();
+        restore(chunkKey);
+        ChunkState state = chunks.get(chunkKey);
+        if (state == null) return;
+
+        state.unloaded = false;
+        state.loadedTick = world.getServer().getTicks();
+
+        LongIterator it = new LongOpenHashSet(state.positions).iterator();
+        while (it.hasNext()) {
+            long key = it.nextLong();
+            if (!(chunk.getBlockEntities().get(BlockPos.fromLong(key)) instanceof Inventory)) removeEntry(key, chunkKey);
+        }
+    }
+
+    public void remove(BlockPos pos) {
+        long key = pos.asLong();
+        long chunkKey = ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4);
+        restore(chunkKey);
+        LongOpenHashSet dirty = dirtyByChunk.get(chunkKey);
+        if (dirty != null && dirty.remove(key) && dirty.isEmpty()) dirtyByChunk.remove(chunkKey);
+
+        removeEntry(key, chunkKey);
+    }
+
+    private void flushPendingRemovals() {
+        if (pendingRemovals.isEmpty()) return;
+
+        LongIterator it = pendingRemovals.iterator();
+        while (it.hasNext()) remove(BlockPos.fromLong(it.nextLong()));
+        pendingRemovals.clear();
+    }
+
+    /**
+     * 该区块中已知的容器数 (有条目的加上待重扫的，可能重复计算)，用于搜索前预估成本
+     */
+    public int knownContainers(int chunkX, int chunkZ) {
+        long chunkKey = ChunkPos.toLong(chunkX, chunkZ);
+        ChunkState state = chunks.get(chunkKey);
+        LongOpenHashSet dirty = dirtyByChunk.get(chunkKey);
+        IndexStore.PersistedChunk stored = persisted.get(chunkKey);
+        return (state != null ? state.positions.size() : 0) + (dirty != null ? dirty.size() : 0) + (stored != null ? stored.containerCount() : 0);
+    }
+
+    /**
+     * 该未加载区块在冷缓存或磁盘索引中是否有完整的条目 (没有脏容器，也没有还在写回中的快照)。
+     * 有时搜索未加载区块可以直接查索引，不必读取区域文件；调用 {@link #refreshChunk} 后用 {@link #forEachHit} 查询
+     */
+    public boolean hasColdEntries(int chunkX, int chunkZ) {
+        long chunkKey = ChunkPos.toLong(chunkX, chunkZ);
+        if (dirtyByChunk.containsKey(chunkKey) || inFlight.containsKey(chunkKey)) return false;
+
+        ChunkState state = chunks.get(chunkKey);
+        return state != null && state.unloaded || persisted.containsKey(chunkKey);
+    }
+
+    /**
+     * 所有可能含有容器的已加载区块 (有条目或有脏容器)，按区块坐标排序，顺序在重启之间保持稳定
+     */
+    public long[] loadedContainerChunks() {
+        LongOpenHashSet keys = new LongOpenHashSet(dirtyByChunk.keySet());
+        for (Long2ObjectMap.Entry<ChunkState> entry : chunks.long2ObjectEntrySet()) {
+            if (!entry.getValue().unloaded) keys.add(entry.getLongKey());
+        }
+        long[] sorted = keys.toLongArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * 重新扫描该区块中位于包围盒内的脏容器，让索引在这部分范围内与世界保持一致
+     *
+     * @return 本次重新扫描的容器数
+     */
+    public int refreshChunk(int chunkX, int chunkZ, BlockBox box) {
+        long chunkKey = ChunkPos.toLong(chunkX, chunkZ);
+        restore(chunkKey);
+        touch(chunkKey);
+        LongOpenHashSet dirty = dirtyByChunk.get(chunkKey);
+        if (dirty == null) return 0;
+
+        int rescanned = 0;
+        LongIterator it = dirty.iterator();
+        while (it.hasNext()) {
+            long key = it.nextLong();
+            if (!box.contains(BlockPos.unpackLongX(key), BlockPos.unpackLongY(key), BlockPos.unpackLongZ(key))) continue;
+
+            it.remove();
+            rescanned++;
+            ContainerSnapshot snapshot = capture(key, chunkKey);
+            if (snapshot == null) continue;
+
+            scratch.clear();
+            stats.nestedStacksExpanded.add(snapshot.aggregate(scratch, nestingStack));
+            put(key, chunkKey, snapshot.block, scratch.freeze());
+        }
+        if (dirty.isEmpty()) dirtyByChunk.remove(chunkKey);
+        evictIfNeeded();
+        return rescanned;
+    }
+
+    /**
+     * 并行模式：只在主线程抓取该区块中位于包围盒内的脏容器快照，汇总交给 {@link ScanWorkers}，
+     * 结果再通过 {@link #install} 写回索引；汇总失败或不再需要时必须调用 {@link #abandon}。
+     * 在写回之前，索引中保留的是旧内容，其他搜索用 {@link #settling} 等待。
+     *
+     * @return 没有脏容器时返回 null
+     */
+    public Capture captureChunk(int chunkX, int chunkZ, BlockBox box) {
+        long chunkKey = ChunkPos.toLong(chunkX, chunkZ);
+        restore(chunkKey);
+        touch(chunkKey);
+        LongOpenHashSet dirty = dirtyByChunk.get(chunkKey);
+        if (dirty == null) return null;
+
+        List<ContainerSnapshot> snapshots = new ArrayList<>();
+        LongIterator it = dirty.iterator();
+        while (it.hasNext()) {
+            long key = it.nextLong();
+            if (!box.contains(BlockPos.unpackLongX(key), BlockPos.unpackLongY(key), BlockPos.unpackLongZ(key))) continue;
+
+            it.remove();
+            ContainerSnapshot snapshot = capture(key, chunkKey);
+            if (snapshot != null) snapshots.add(snapshot);
+        }
+        if (dirty.isEmpty()) dirtyByChunk.remove(chunkKey);
+        if (snapshots.isEmpty()) return null;
+
+        Capture capture = new Capture(chunkKey, snapshots);
+        inFlight.computeIfAbsent(chunkKey, k -> new ArrayList<>()).add(capture);
+        return capture;
+    }
+
+    /**
+     * 该区块包围盒内还有其他搜索抓取、尚未写回的容器时，返回它们全部写回 (或放弃) 后完成的 future，否则返回 null。
+     * 在这之前发送命中会用到旧的条目
+     */
+    public CompletableFuture<Void> settling(int chunkX, int chunkZ, BlockBox box) {
+        List<Capture> captures = inFlight.get(ChunkPos.toLong(chunkX, chunkZ));
+        if (captures == null) return null;
+
+        List<CompletableFuture<Void>> waiting = new ArrayList<>();
+        for (Capture capture : captures) {
+            for (ContainerSnapshot snapshot : capture.snapshots) {
+                long key = snapshot.pos;
+                if (box.contains(BlockPos.unpackLongX(key), BlockPos.unpackLongY(key), BlockPos.unpackLongZ(key))) {
+                    waiting.add(capture.settled);
+                    break;
+                }
+            }
+        }
+        return waiting.isEmpty() ? null : CompletableFuture.allOf(waiting.toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * 把工作线程汇总好的结果写回索引。快照抓取之后容器可能已被破坏或随区块卸载，写回前需要重新确认
+     */
+    public void install(Capture capture, List<ScanWorkers.Result> results) {
+        for (ScanWorkers.Result result : results) {
+            long key = result.snapshot().pos;
+            int x = BlockPos.unpackLongX(key);
+            int z = BlockPos.unpackLongZ(key);
+            long chunkKey = ChunkPos.toLong(x >> 4, z >> 4);
+
+            if (!world.isChunkLoaded(x >> 4, z >> 4) || !(world.getBlockEntity(BlockPos.fromLong(key)) instanceof Inventory)) {
+                removeEntry(key, chunkKey);
+                continue;
+            }
+            put(key, chunkKey, result.snapshot().block, result.counts());
+        }
+        settle(capture);
+        evictIfNeeded();
+    }
+
+    /**
+     * 汇总失败或结果不再需要：抓取时清掉的脏标记重新记上，下次查询时重扫
+     */
+    public void abandon(Capture capture) {
+        for (ContainerSnapshot snapshot : capture.snapshots) markDirty(BlockPos.fromLong(snapshot.pos));
+        settle(capture);
+    }
+
+    private void settle(Capture capture) {
+        List<Capture> captures = inFlight.get(capture.chunkKey);
+        if (captures != null && captures.remove(capture) && captures.isEmpty()) inFlight.remove(capture.chunkKey);
+        capture.settled.complete(null);
+    }
+
+    /**
+     * 遍历该区块中位于包围盒内、含有目标物品的容器。调用前应先 {@link #refreshChunk}
+     */
+    public void forEachHit(int rawId, int chunkX, int chunkZ, BlockBox box, HitConsumer consumer) {
+        Long2ObjectOpenHashMap<LongOpenHashSet> itemChunks = positionsByItem.get(rawId);
+        if (itemChunks == null) return;
+        LongOpenHashSet positions = itemChunks.get(ChunkPos.toLong(chunkX, chunkZ));
+        if (positions == null) return;
+
+        LongIterator it = positions.iterator();
+        while (it.hasNext()) {
+            long key = it.nextLong();
+            if (!box.contains(BlockPos.unpackLongX(key), BlockPos.unpackLongY(key), BlockPos.unpackLongZ(key))) continue;
+
+            Entry entry = entries.get(key);
+            consumer.accept(BlockPos.fromLong(key), entry.block(), entry.counts().get(rawId), entry.counts().getNested(rawId));
+        }
+    }
+
+    /**
+     * 抓取容器快照；容器已不存在时顺便把它移出索引
+     */
+    private ContainerSnapshot capture(long key, long chunkKey) {
+        stats.blockEntitiesVisited.increment();
+
+        // 只读取已加载区块，getBlockEntity 遇到未加载区块会同步加载它
+        BlockEntity blockEntity = world.isChunkLoaded(ChunkPos.getPackedX(chunkKey), ChunkPos.getPackedZ(chunkKey))
+                ? world.getBlockEntity(BlockPos.fromLong(key))
+                : null;
+
+        if (!(blockEntity instanceof Inventory inventory)) {
+            removeEntry(key, chunkKey);
+            return null;
+        }
+        ContainerSnapshot snapshot = ContainerSnapshot.capture(key, blockEntity.getCachedState().getBlock(), inventory);
+        stats.inventoriesScanned.increment();
+        stats.slotsRead.add(snapshot.slotsRead);
+        return snapshot;
+    }
+
+    void put(long key, long chunkKey, Block block, ItemCounts counts) {
+        removeEntry(key, chunkKey);
+        if (counts.isEmpty()) return;
+
+        entries.put(key, new Entry(block, counts));
+        for (int i = 0; i < counts.size(); i++) {
+            positionsByItem.computeIfAbsent(counts.idAt(i), k -> new Long2ObjectOpenHashMap<>())
+                    .computeIfAbsent(chunkKey, k -> new LongOpenHashSet())
+                    .add(key);
+        }
+
+        ChunkState state = chunks.getAndMoveToLast(chunkKey);
+        if (state == null) {
+            state = new ChunkState();
+            chunks.putAndMoveToLast(chunkKey, state);
+        }
+        state.positions.add(key);
+        memoryBytes += estimateBytes(counts);
+    }
+
+    private void removeEntry(long key, long chunkKey) {
+        Entry old = entries.remove(key);
+        if (old == null) return;
+
+        ItemCounts counts = old.counts();
+        for (int i = 0; i < counts.size(); i++) {
+            int rawId = counts.idAt(i);
+            Long2ObjectOpenHashMap<LongOpenHashSet> itemChunks = positionsByItem.get(rawId);
+            if (itemChunks == null) continue;
+            LongOpenHashSet positions = itemChunks.get(chunkKey);
+            if (positions == null) continue;
+
+            positions.remove(key);
+            if (positions.isEmpty()) {
+                itemChunks.remove(chunkKey);
+                if (itemChunks.isEmpty()) positionsByItem.remove(rawId);
+            }
+        }
+
+        ChunkState state = chunks.get(chunkKey);
+        if (state != null) {
+            state.positions.remove(key);
+            if (state.positions.isEmpty()) chunks.remove(chunkKey);
+        }
+        memoryBytes -= estimateBytes(counts);
+    }
+
+    void addPersisted(long chunkKey, IndexStore.PersistedChunk chunk) {
+        persisted.put(chunkKey, chunk);
+    }
+
+    /**
+     * 解码磁盘索引中的这个区块 (如果还没解码)。区块还没加载时条目作为冷缓存，加载时再和方块实体核对
+     */
+    private void restore(long chunkKey) {
+        if (persisted.isEmpty()) return;
+        IndexStore.PersistedChunk chunk = persisted.remove(chunkKey);
+        if (chunk == null) return;
+
+        chunk.decode(scratch, (key, block, counts) -> put(key, chunkKey, block, counts));
+        ChunkState state = chunks.get(chunkKey);
+        if (state != null) state.unloaded = !world.isChunkLoaded(ChunkPos.getPackedX(chunkKey), ChunkPos.getPackedZ(chunkKey));
+        evictIfNeeded();
+    }
+
+    /**
+     * 写盘前调用：取走所有还没解码的磁盘区块，之后索引不再引用映射的文件。
+     * 有脏容器的区块数据已经过时，不返回，下次加载时重新扫描
+     */
+    Long2ObjectOpenHashMap<IndexStore.PersistedChunk> takePersisted() {
+        Long2ObjectOpenHashMap<IndexStore.PersistedChunk> taken = new Long2ObjectOpenHashMap<>(persisted);
+        persisted.clear();
+        taken.keySet().removeAll(dirtyByChunk.keySet());
+        return taken;
+    }
+
+    /**
+     * 遍历可以写盘的条目。有脏容器或还在写回中的区块整个跳过，下次加载时重新扫描：
+     * 写出的区块必须是完整的，未加载区块的搜索会直接使用它 (见 {@link #hasColdEntries})
+     */
+    void forEachClean(EntryConsumer consumer) {
+        for (Long2ObjectMap.Entry<Entry> entry : entries.long2ObjectEntrySet()) {
+            long key = entry.getLongKey();
+            long chunkKey = ChunkPos.toLong(BlockPos.unpackLongX(key) >> 4, BlockPos.unpackLongZ(key) >> 4);
+            if (dirtyByChunk.containsKey(chunkKey) || inFlight.containsKey(chunkKey)) continue;
+
+            consumer.accept(key, entry.getValue().block(), entry.getValue().counts());
+        }
+    }
+
+    private void touch(long chunkKey) {
+        chunks.getAndMoveToLast(chunkKey);
+    }
+
+    /**
+     * 超过内存上限时按 LRU 淘汰整个区块。已加载区块的容器重新记脏，下次查询时重扫
+     */
+    private void evictIfNeeded() {
+        long limit = ContainerSearchCommand.CONFIG.indexMemoryMb * 1024L * 1024L;
+        // 至少保留最近使用的那个区块，避免刚扫完就被淘汰
+        while (memoryBytes > limit && chunks.size() > 1) {
+            long chunkKey = chunks.firstLongKey();
+            ChunkState state = chunks.get(chunkKey);
+            boolean loaded = !state.unloaded;
+
+            LongIterator it = new LongOpenHashSet(state.positions).iterator();
+            while (it.hasNext()) {
+                long key = it.nextLong();
+                removeEntry(key, chunkKey);
+                if (loaded) markDirty(BlockPos.fromLong(key));
+            }
+            chunks.remove(chunkKey);
+        }
+    }
+
+    private static long estimateBytes(ItemCounts counts) {
+        // 条目对象 + 两到三个 int 数组 + 每种物品在倒排表里的一个 long 槽位，粗略估计即可
+        return 96L + counts.size() * (counts.hasNested() ? 28L : 24L);
+    }
+
+    private static final class ChunkState {
+        // 该区块中有条目的容器坐标
+        final LongOpenHashSet positions = new LongOpenHashSet();
+        // 区块已卸载，条目作为冷缓存保留
+        boolean unloaded = false;
+        // 最近一次重新加载的 tick，同一 tick 内的方块实体加载事件不需要记脏
+        int loadedTick = -1;
+    }
+
+    private record Entry(Block block, ItemCounts counts) {
+    }
+
+    /**
+     * 并行模式下一次抓取的快照，从 {@link #captureChunk} 到 {@link #install} 或 {@link #abandon} 之间处于写回中
+     */
+    public static final class Capture {
+        private final long chunkKey;
+        public final List<ContainerSnapshot> snapshots;
+        // 写回或放弃后完成
+        private final CompletableFuture<Void> settled = new CompletableFuture<>();
+
+        private Capture(long chunkKey, List<ContainerSnapshot> snapshots) {
+            this.chunkKey = chunkKey;
+            this.snapshots = snapshots;
+        }
+    }
+
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(long pos, Block block, ItemCounts counts);
+    }
+
+    @FunctionalInterface
+    public interface HitConsumer {
+        /**
+         * @param nested count 中位于潜影盒、收纳袋等嵌套容器里的数量
+         */
+        void accept(BlockPos pos, Block block, int count, int nested);
+    }
+}
@@ -3,6 +3,16 @@ package io.github.nkymz.containersearchcommand;
 import io.github.nkymz.containersearchcommand.SearchCommand;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerBlockEntityEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerEntityEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerWorldEvents;
+import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.inventory.Inventory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,14 +20,68 @@ public class ContainerSearchCommand implements ModInitializer {
     // 定义 Mod ID，方便日志和资源引用
     public static final String MOD_ID = "containersearch";
     public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
+    public static SearchConfig CONFIG = new SearchConfig();
 
     @Override
     public void onInitialize() {
+        CONFIG = SearchConfig.load(FabricLoader.getInstance().getConfigDir());
+
+        // 高亮坐标发给装了本模组的客户端，由客户端绘制
+        PayloadTypeRegistry.playS2C().register(HighlightPayload.ID, HighlightPayload.CODEC);
+
         // 在服务器启动时注册指令
         CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> {
             SearchCommand.register(dispatcher, registryAccess);
         });
 
+        // 容器索引：方块实体加载时记脏，被破坏时移出索引；随区块卸载的条目作为冷缓存保留
+        ServerBlockEntityEvents.BLOCK_ENTITY_LOAD.register((blockEntity, world) -> {
+            if (blockEntity instanceof Inventory) ContainerIndex.get(world).onBlockEntityLoad(blockEntity.getPos());
+        });
+        ServerBlockEntityEvents.BLOCK_ENTITY_UNLOAD.register((blockEntity, world) -> {
+            if (blockEntity instanceof Inventory) ContainerIndex.get(world).onBlockEntityUnload(blockEntity.getPos());
+        });
+        ServerChunkEvents.CHUNK_LOAD.register((world, chunk) -> ContainerIndex.get(world).onChunkLoad(chunk));
+        ServerChunkEvents.CHUNK_UNLOAD.register((world, chunk) -> ContainerIndex.get(world).onChunkUnload(chunk));
+        // 索引持久化：世界加载时映射磁盘索引；卸载时暂存，等服务器完全停止、区块都写盘后再写出
+        ServerWorldEvents.LOAD.register((server, world) -> IndexStore.load(world));
+        ServerWorldEvents.UNLOAD.register((server, world) -> {
+            IndexStore.stage(world);
+            ContainerIndex.remove(world);
+            SearchStats.remove(world);
+        });
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            SearchScheduler.clear();
+            SearchAdmission.clear();
+            SearchResults.clear();
+            ScanWorkers.shutdown();
+            IndexStore.flush(server);
+            ContainerIndex.clear();
+            SearchStats.clear();
+            Census.clear();
+        });
+        // 普查：关服时保存进度，下次启动后继续
+        ServerLifecycleEvents.SERVER_STARTED.register(Census::load);
+        ServerLifecycleEvents.SERVER_STOPPING.register(Census::save);
+
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
+            SearchResults.forget(handler.getPlayer());
+            HighlightManager.clear(handler.getPlayer());
+        });
+
+        // 高亮实体：关服前统一清理 (此时世界还在)，区块加载时清理上次残留的
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> HighlightManager.clearAll());
+        ServerEntityEvents.ENTITY_LOAD.register((entity, world) -> HighlightManager.onEntityLoad(entity));
+
+        // 搜索任务在每个 tick 末尾按预算分片执行，高亮也在 tick 中统一过期
+        ServerTickEvents.END_SERVER_TICK.register(server -> {
+            ContainerIndex.tickAll();
+            SearchScheduler.tick(server);
+            Census.tick(server);
+            HighlightManager.tick(server);
+            SearchStats.tick(server);
+        });
+
         LOGGER.info("ContainerSearchCommand initialized!");
     }
-}
\ No newline at end of file
+}
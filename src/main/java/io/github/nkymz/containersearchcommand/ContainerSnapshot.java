@@ -0,0 +1,122 @@
+package io.github.nkymz.containersearchcommand;
+
+import net.minecraft.block.Block;
+import net.minecraft.component.DataComponentTypes;
+import net.minecraft.component.type.BundleContentsComponent;
+import net.minecraft.component.type.ContainerComponent;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 容器内容的只读快照：(物品 raw id, 数量) 数组。
+ * <p>
+ * 在主线程上用 {@link #capture} 复制 (只读 id 和数量，很便宜)，之后可以在任意线程上 {@link #aggregate}。
+ * 潜影盒 (ContainerComponent) 和收纳袋 (BundleContentsComponent) 组件本身是不可变的，
+ * 所以快照只保存组件引用，展开工作留给 aggregate，不占用主线程。
+ * 嵌套可以任意多层 (潜影盒里的收纳袋、收纳袋里的收纳袋……)，展开时用 {@link NestingStack} 逐层处理，
+ * 最多展开配置的层数。
+ */
+public final class ContainerSnapshot {
+
+    final long pos;
+    final Block block;
+    // 抓取时读取的格子数，用于统计
+    final int slotsRead;
+    private final int[] ids;
+    private final int[] counts;
+    private final int size;
+    // 不可变的嵌套容器组件 (ContainerComponent / BundleContentsComponent)，没有时为 null
+    private final List<Object> nested;
+
+    private ContainerSnapshot(long pos, Block block, int slotsRead, int[] ids, int[] counts, int size, List<Object> nested) {
+        this.pos = pos;
+        this.block = block;
+        this.slotsRead = slotsRead;
+        this.ids = ids;
+        this.counts = counts;
+        this.size = size;
+        this.nested = nested;
+    }
+
+    /**
+     * 复制容器的顶层内容。必须在服务器主线程调用
+     */
+    public static ContainerSnapshot capture(long pos, Block block, Inventory inventory) {
+        int slots = inventory.size();
+        int[] ids = new int[slots];
+        int[] counts = new int[slots];
+        int size = 0;
+        List<Object> nested = null;
+
+        for (int i = 0; i < slots; i++) {
+            ItemStack stack = inventory.getStack(i);
+            if (stack.isEmpty()) continue;
+
+            ids[size] = Item.getRawId(stack.getItem());
+            counts[size] = stack.getCount();
+            size++;
+
+            ContainerComponent containerData = stack.get(DataComponentTypes.CONTAINER);
+            if (containerData != null) {
+                if (nested == null) nested = new ArrayList<>();
+                nested.add(containerData);
+            }
+
+            BundleContentsComponent bundleData = stack.get(DataComponentTypes.BUNDLE_CONTENTS);
+            if (bundleData != null) {
+                if (nested == null) nested = new ArrayList<>();
+                nested.add(bundleData);
+            }
+        }
+        return new ContainerSnapshot(pos, block, slots, ids, counts, size, nested);
+    }
+
+    /**
+     * 把快照 (含各层嵌套内容) 累加进物品 raw id → 数量 表。可以在任意线程调用，out 和 stack 由调用方独占
+     *
+     * @return 展开的嵌套物品数，用于统计
+     */
+    public int aggregate(ItemCountTable out, NestingStack stack) {
+        for (int i = 0; i < size; i++) {
+            out.add(ids[i], counts[i]);
+        }
+        int maxDepth = ContainerSearchCommand.CONFIG.maxNestingDepth;
+        if (nested == null || maxDepth <= 0) return 0;
+
+        for (Object component : nested) stack.push(component, 1);
+
+        int expanded = 0;
+        while (!stack.isEmpty()) {
+            int depth = stack.peekDepth();
+            Object component = stack.pop();
+
+            if (component instanceof ContainerComponent containerData) {
+                for (ItemStack innerStack : containerData.iterateNonEmpty()) {
+                    addNested(out, stack, innerStack, depth, maxDepth);
+                    expanded++;
+                }
+            } else if (component instanceof BundleContentsComponent bundleData) {
+                for (int j = 0; j < bundleData.size(); j++) {
+                    addNested(out, stack, bundleData.get(j), depth, maxDepth);
+                }
+                expanded += bundleData.size();
+            }
+        }
+        return expanded;
+    }
+
+    private static void addNested(ItemCountTable out, NestingStack stack, ItemStack innerStack, int depth, int maxDepth) {
+        out.addNested(Item.getRawId(innerStack.getItem()), innerStack.getCount());
+        if (depth >= maxDepth) return;
+
+        ContainerComponent containerData = innerStack.get(DataComponentTypes.CONTAINER);
+        if (containerData != null) stack.push(containerData, depth + 1);
+
+        BundleContentsComponent bundleData = innerStack.get(DataComponentTypes.BUNDLE_CONTENTS);
+        if (bundleData != null) stack.push(bundleData, depth + 1);
+    }
+}
@@ -0,0 +1,32 @@
+package io.github.nkymz.containersearchcommand;
+
+import io.github.nkymz.containersearchcommand.mixin.AbstractHorseEntityAccessor;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.ItemEntity;
+import net.minecraft.entity.decoration.ItemFrameEntity;
+import net.minecraft.entity.passive.AbstractHorseEntity;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.inventory.SimpleInventory;
+
+/**
+ * 实体身上的物品：运输/漏斗矿车、运输船 (本身就是 Inventory)、驴/骡/羊驼的箱子、物品展示框、掉落物。
+ * 实体会移动，不进容器索引，每次搜索时按区块直接读取。
+ */
+public final class EntityContainers {
+
+    private EntityContainers() {
+    }
+
+    /**
+     * 实体携带的物品栏；实体不带物品时返回 null。单个物品包装成只有一格的物品栏，方便和容器共用统计逻辑
+     */
+    public static Inventory of(Entity entity) {
+        if (entity instanceof Inventory inventory) return inventory;
+        if (entity instanceof AbstractHorseEntity horse) return ((AbstractHorseEntityAccessor) horse).containersearch$getItems();
+        if (entity instanceof ItemFrameEntity frame) {
+            return frame.getHeldItemStack().isEmpty() ? null : new SimpleInventory(frame.getHeldItemStack());
+        }
+        if (entity instanceof ItemEntity item) return new SimpleInventory(item.getStack());
+        return null;
+    }
+}
@@ -0,0 +1,164 @@
+package io.github.nkymz.containersearchcommand;
+
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.block.Blocks;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityType;
+import net.minecraft.entity.decoration.DisplayEntity;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.AffineTransformation;
+import net.minecraft.util.math.BlockPos;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 搜索结果高亮。
+ * <p>
+ * 装了本模组的客户端：只发送一个 {@link HighlightPayload}，由客户端自己绘制方框，
+ * 服务器不生成、不追踪任何实体，也只有搜索的玩家本人看得到。
+ * <p>
+ * 原版客户端退回到展示实体 (容器内部的小海晶灯核心)：
+ * 由服务器 tick 统一驱动过期，不再为每个命中开一个 java.util.Timer 线程；
+ * 同一玩家再次高亮时优先把已有的展示实体挪到新位置，而不是销毁再生成；每个玩家的高亮数量有上限。
+ */
+public class HighlightManager {
+
+    // 所有高亮实体都带这个标签，区块重新加载时可以识别并清理残留的实体
+    public static final String TAG = ContainerSearchCommand.MOD_ID + "_highlight";
+
+    private static final Map<UUID, PlayerHighlights> ACTIVE = new HashMap<>();
+    // 当前由本类管理的实体，用来区分刚生成的实体和存档里残留的实体
+    private static final Set<UUID> MANAGED = new HashSet<>();
+
+    private static class PlayerHighlights {
+        ServerWorld world;
+        final List<DisplayEntity.BlockDisplayEntity> displays = new ArrayList<>();
+        int expireTick;
+    }
+
+    /**
+     * 用这组坐标替换玩家当前的高亮
+     */
+    public static void show(ServerPlayerEntity player, List<BlockPos> positions) {
+        SearchConfig config = ContainerSearchCommand.CONFIG;
+        ServerWorld world = player.getServerWorld();
+
+        if (ServerPlayNetworking.canSend(player, HighlightPayload.ID)) {
+            // 之前以展示实体显示的高亮 (例如玩家中途装上了模组) 一并清掉
+            clear(player);
+
+            int count = Math.min(positions.size(), config.maxHighlightsPerPlayer);
+            long[] packed = new long[count];
+            for (int i = 0; i < count; i++) packed[i] = positions.get(i).asLong();
+            ServerPlayNetworking.send(player, new HighlightPayload(packed, config.highlightSeconds * 20));
+            return;
+        }
+
+        PlayerHighlights highlights = ACTIVE.computeIfAbsent(player.getUuid(), k -> new PlayerHighlights());
+        if (highlights.world != world) {
+            discardAll(highlights);
+            highlights.world = world;
+        }
+        // 已被移除或随区块卸载的实体不再由本类管理，之后重新加载时会被当作残留清理掉
+        highlights.displays.removeIf(display -> {
+            if (!display.isRemoved()) return false;
+            MANAGED.remove(display.getUuid());
+            return true;
+        });
+
+        int wanted = Math.min(positions.size(), config.maxHighlightsPerPlayer);
+        for (int i = 0; i < wanted; i++) {
+            BlockPos pos = positions.get(i);
+            if (i < highlights.displays.size()) {
+                // 复用已有实体，只移动位置
+                highlights.displays.get(i).refreshPositionAndAngles(pos.getX(), pos.getY(), pos.getZ(), 0.0f, 0.0f);
+            } else {
+                highlights.displays.add(spawn(world, pos));
+            }
+        }
+
+        // 多出来的旧实体一并移除
+        while (highlights.displays.size() > wanted) {
+            discard(highlights.displays.removeLast());
+        }
+        highlights.expireTick = world.getServer().getTicks() + config.highlightSeconds * 20;
+    }
+
+    public static void tick(MinecraftServer server) {
+        if (ACTIVE.isEmpty()) return;
+
+        int now = server.getTicks();
+        Iterator<PlayerHighlights> it = ACTIVE.values().iterator();
+        while (it.hasNext()) {
+            PlayerHighlights highlights = it.next();
+            if (now < highlights.expireTick) continue;
+
+            // 同一玩家的高亮整批过期
+            discardAll(highlights);
+            it.remove();
+        }
+    }
+
+    public static void clear(ServerPlayerEntity player) {
+        PlayerHighlights highlights = ACTIVE.remove(player.getUuid());
+        if (highlights != null) discardAll(highlights);
+    }
+
+    public static void clearAll() {
+        for (PlayerHighlights highlights : ACTIVE.values()) discardAll(highlights);
+        ACTIVE.clear();
+        MANAGED.clear();
+    }
+
+    /**
+     * 实体随区块加载时调用：带标签却不归本类管理的，是上次没来得及清理就被存进区块的残留
+     */
+    public static void onEntityLoad(Entity entity) {
+        if (entity.getCommandTags().contains(TAG) && !MANAGED.contains(entity.getUuid())) {
+            entity.discard();
+        }
+    }
+
+    private static DisplayEntity.BlockDisplayEntity spawn(ServerWorld world, BlockPos pos) {
+        DisplayEntity.BlockDisplayEntity display = new DisplayEntity.BlockDisplayEntity(EntityType.BLOCK_DISPLAY, world);
+
+        display.setPos(pos.getX(), pos.getY(), pos.getZ());
+        display.setBlockState(Blocks.SEA_LANTERN.getDefaultState());
+        display.setGlowing(true);
+        display.addCommandTag(TAG);
+
+        float scale = 0.4f;
+        float offset = (1.0f - scale) / 2.0f;
+
+        display.setTransformation(new AffineTransformation(
+                new Vector3f(offset, offset, offset),
+                null,
+                new Vector3f(scale, scale, scale),
+                null
+        ));
+
+        MANAGED.add(display.getUuid());
+        world.spawnEntity(display);
+        return display;
+    }
+
+    private static void discardAll(PlayerHighlights highlights) {
+        for (DisplayEntity.BlockDisplayEntity display : highlights.displays) discard(display);
+        highlights.displays.clear();
+    }
+
+    private static void discard(DisplayEntity.BlockDisplayEntity display) {
+        MANAGED.remove(display.getUuid());
+        if (!display.isRemoved()) display.discard();
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.nkymz.containersearchcommand;
+
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.util.Identifier;
+
+/**
+ * 服务器 → 客户端：要高亮的容器坐标 (BlockPos.asLong) 和持续时间。
+ * 装了本模组的客户端收到后自己绘制方框，服务器不再为每个命中生成展示实体；坐标为空表示清除高亮。
+ */
+public record HighlightPayload(long[] positions, int durationTicks) implements CustomPayload {
+
+    public static final Id<HighlightPayload> ID = new Id<>(Identifier.of(ContainerSearchCommand.MOD_ID, "highlight"));
+    public static final PacketCodec<PacketByteBuf, HighlightPayload> CODEC = PacketCodec.of(HighlightPayload::write, HighlightPayload::read);
+
+    private void write(PacketByteBuf buf) {
+        buf.writeLongArray(positions);
+        buf.writeVarInt(durationTicks);
+    }
+
+    private static HighlightPayload read(PacketByteBuf buf) {
+        return new HighlightPayload(buf.readLongArray(), buf.readVarInt());
+    }
+
+    @Override
+    public Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+}
@@ -0,0 +1,495 @@
+package io.github.nkymz.containersearchcommand;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.block.Block;
+import net.minecraft.item.Item;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.dimension.DimensionType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 容器索引的磁盘持久化：每个维度的存档目录下 data/containersearch/r.X.Z.csi，和原版的 .mca 区域文件一一对应。
+ * <p>
+ * 文件格式 (大端)：
+ * <pre>
+ * int 魔数, int 版本
+ * int 物品数, 物品 id × n        —— 本文件内的物品编号 → 物品 id，加载时重新映射成当前的 raw id
+ * int 方块数, 方块 id × n
+ * int 区块数, (long 区块坐标, int .mca 时间戳, int 数据偏移) × n
+ * 每个区块：int 容器数, (long 坐标, int 方块编号, int 物品种类数, (int 物品编号, int 数量, int 嵌套数量) × k) × n
+ * </pre>
+ * 启动时只读文件头和区块表，数据部分用内存映射，某个区块第一次被用到时才解码。
+ * 写盘时记录每个区块在 .mca 文件头里的修改时间戳，加载时不一致 (区块在没有本模组时被改过) 的区块直接丢弃。
+ * <p>
+ * 每个区域先写到 .tmp 再原子替换，写到一半崩溃不会损坏旧文件。Windows 上仍被映射的文件不能替换，
+ * 这时写好的新文件改名为 .pending，下次启动映射之前再换上。
+ */
+public final class IndexStore {
+
+    private static final int MAGIC = 0x43534958; // "CSIX"
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".csi";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String PENDING_SUFFIX = ".pending";
+
+    // 已卸载、等服务器完全停止 (区块都写进 .mca 之后) 再写盘的索引
+    private static final Map<RegistryKey<World>, Staged> STAGED = new LinkedHashMap<>();
+
+    private IndexStore() {
+    }
+
+    /**
+     * 区块在磁盘索引中的位置，和所在文件的编号映射表
+     */
+    public record PersistedChunk(ByteBuffer buffer, int offset, int[] items, Block[] blocks) {
+
+        int containerCount() {
+            return buffer.getInt(offset);
+        }
+
+        /**
+         * 解码这个区块的条目。编号在当前注册表中已不存在的物品被忽略，不存在的方块整条忽略
+         */
+        void decode(ItemCountTable table, ContainerIndex.EntryConsumer consumer) {
+            ByteBuffer in = buffer.duplicate();
+            in.position(offset);
+
+            int containers = in.getInt();
+            for (int i = 0; i < containers; i++) {
+                long pos = in.getLong();
+                int blockIndex = in.getInt();
+                int kinds = in.getInt();
+
+                table.clear();
+                for (int j = 0; j < kinds; j++) {
+                    int rawId = items[in.getInt()];
+                    int count = in.getInt();
+                    int nested = in.getInt();
+                    if (rawId < 0) continue;
+
+                    table.add(rawId, count - nested);
+                    if (nested > 0) table.addNested(rawId, nested);
+                }
+
+                Block block = blocks[blockIndex];
+                if (block != null && !table.isEmpty()) consumer.accept(pos, block, table.freeze());
+            }
+        }
+
+        /**
+         * 复制到堆内存，之后不再引用映射的文件
+         */
+        PersistedChunk detach() {
+            int end = offset + 4;
+            int containers = buffer.getInt(offset);
+            for (int i = 0; i < containers; i++) end += 16 + buffer.getInt(end + 12) * 12;
+
+            ByteBuffer copy = ByteBuffer.allocate(end - offset);
+            copy.put(buffer.slice(offset, end - offset));
+            return new PersistedChunk(copy.flip(), 0, items, blocks);
+        }
+
+        /**
+         * 不解码，按新文件的编号表转写这个区块。和 decode 一样丢掉当前注册表中已不存在的物品和方块
+         */
+        void transcode(DataOutputStream out, Palette palette) throws IOException {
+            int containers = buffer.getInt(offset);
+            int kept = 0;
+            int position = offset + 4;
+            for (int i = 0; i < containers; i++) {
+                if (blocks[buffer.getInt(position + 8)] != null && knownKinds(position) > 0) kept++;
+                position += 16 + buffer.getInt(position + 12) * 12;
+            }
+
+            out.writeInt(kept);
+            position = offset + 4;
+            for (int i = 0; i < containers; i++) {
+                Block block = blocks[buffer.getInt(position + 8)];
+                int kinds = buffer.getInt(position + 12);
+                int known = knownKinds(position);
+                if (block != null && known > 0) {
+                    out.writeLong(buffer.getLong(position));
+                    out.writeInt(palette.block(block));
+                    out.writeInt(known);
+                    for (int j = 0; j < kinds; j++) {
+                        int at = position + 16 + j * 12;
+                        int rawId = items[buffer.getInt(at)];
+                        if (rawId < 0) continue;
+
+                        out.writeInt(palette.item(Item.byRawId(rawId)));
+                        out.writeInt(buffer.getInt(at + 4));
+                        out.writeInt(buffer.getInt(at + 8));
+                    }
+                }
+                position += 16 + kinds * 12;
+            }
+        }
+
+        private int knownKinds(int position) {
+            int kinds = buffer.getInt(position + 12);
+            int known = 0;
+            for (int j = 0; j < kinds; j++) {
+                if (items[buffer.getInt(position + 16 + j * 12)] >= 0) known++;
+            }
+            return known;
+        }
+    }
+
+    /**
+     * 待写盘的索引，和从中取出、已复制到堆内存的未解码区块
+     */
+    private record Staged(ContainerIndex index, Long2ObjectOpenHashMap<PersistedChunk> persisted) {
+    }
+
+    /**
+     * 一个区域文件要写的区块：内存中的条目，和原样转写的未解码区块
+     */
+    private record Region(Long2ObjectOpenHashMap<List<StoredEntry>> entries, Long2ObjectOpenHashMap<PersistedChunk> persisted) {
+
+        Region() {
+            this(new Long2ObjectOpenHashMap<>(), new Long2ObjectOpenHashMap<>());
+        }
+    }
+
+    private record StoredEntry(long pos, Block block, ItemCounts counts) {
+    }
+
+    private record ChunkRow(long chunkKey, int stamp, int offset) {
+    }
+
+    /**
+     * 一个区域文件内的物品、方块编号表
+     */
+    private static final class Palette {
+        private final Object2IntOpenHashMap<Item> itemIndexes = new Object2IntOpenHashMap<>();
+        private final Object2IntOpenHashMap<Block> blockIndexes = new Object2IntOpenHashMap<>();
+        private final List<Item> items = new ArrayList<>();
+        private final List<Block> blocks = new ArrayList<>();
+
+        int item(Item item) {
+            if (!itemIndexes.containsKey(item)) {
+                itemIndexes.put(item, items.size());
+                items.add(item);
+            }
+            return itemIndexes.getInt(item);
+        }
+
+        int block(Block block) {
+            if (!blockIndexes.containsKey(block)) {
+                blockIndexes.put(block, blocks.size());
+                blocks.add(block);
+            }
+            return blockIndexes.getInt(block);
+        }
+    }
+
+    /**
+     * 世界卸载时调用。未解码的区块不经过内存中的索引 (解码会受内存上限淘汰)，复制出来后原样转写
+     */
+    public static void stage(ServerWorld world) {
+        if (!ContainerSearchCommand.CONFIG.persistIndex) return;
+        ContainerIndex index = ContainerIndex.get(world);
+        Long2ObjectOpenHashMap<PersistedChunk> persisted = index.takePersisted();
+        for (Long2ObjectMap.Entry<PersistedChunk> chunk : persisted.long2ObjectEntrySet()) chunk.setValue(chunk.getValue().detach());
+        STAGED.put(world.getRegistryKey(), new Staged(index, persisted));
+    }
+
+    /**
+     * 服务器停止后调用，此时 .mca 文件已经写完，时间戳是最终的
+     */
+    public static void flush(MinecraftServer server) {
+        for (Map.Entry<RegistryKey<World>, Staged> staged : STAGED.entrySet()) {
+            Path worldDir = DimensionType.getSaveDirectory(staged.getKey(), server.getSavePath(WorldSavePath.ROOT));
+            try {
+                write(worldDir, staged.getValue());
+            } catch (IOException e) {
+                ContainerSearchCommand.LOGGER.warn("Failed to save container index of {}", staged.getKey().getValue(), e);
+            }
+        }
+        STAGED.clear();
+    }
+
+    private static void write(Path worldDir, Staged staged) throws IOException {
+        Path dir = indexDir(worldDir);
+        Files.createDirectories(dir);
+
+        // 按区域 → 区块分组
+        Long2ObjectOpenHashMap<Region> regions = new Long2ObjectOpenHashMap<>();
+        staged.index().forEachClean((pos, block, counts) -> {
+            int cx = BlockPos.unpackLongX(pos) >> 4;
+            int cz = BlockPos.unpackLongZ(pos) >> 4;
+            regions.computeIfAbsent(ChunkPos.toLong(cx >> 5, cz >> 5), k -> new Region()).entries()
+                    .computeIfAbsent(ChunkPos.toLong(cx, cz), k -> new ArrayList<>())
+                    .add(new StoredEntry(pos, block, counts));
+        });
+        for (Long2ObjectMap.Entry<PersistedChunk> chunk : staged.persisted().long2ObjectEntrySet()) {
+            long chunkKey = chunk.getLongKey();
+            int cx = ChunkPos.getPackedX(chunkKey);
+            int cz = ChunkPos.getPackedZ(chunkKey);
+            Region region = regions.computeIfAbsent(ChunkPos.toLong(cx >> 5, cz >> 5), k -> new Region());
+            // 区块已经解码过的以内存中的条目为准
+            if (!region.entries().containsKey(chunkKey)) region.persisted().put(chunkKey, chunk.getValue());
+        }
+
+        Set<String> written = new HashSet<>();
+        for (Long2ObjectMap.Entry<Region> region : regions.long2ObjectEntrySet()) {
+            int regionX = ChunkPos.getPackedX(region.getLongKey());
+            int regionZ = ChunkPos.getPackedZ(region.getLongKey());
+            int[] stamps = readStamps(worldDir, regionX, regionZ);
+            if (stamps == null) continue;
+
+            Path file = dir.resolve("r." + regionX + "." + regionZ + EXTENSION);
+            if (writeRegion(file, region.getValue(), stamps)) written.add(file.getFileName().toString());
+        }
+
+        // 只删除这次没有写出的区域 (已经没有条目) 的旧文件
+        for (Path file : list(dir)) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(PENDING_SUFFIX)) name = name.substring(0, name.length() - PENDING_SUFFIX.length());
+            if (!name.endsWith(EXTENSION) || written.contains(name)) continue;
+            try {
+                Files.delete(file);
+            } catch (IOException e) {
+                ContainerSearchCommand.LOGGER.warn("Failed to delete outdated container index file {}", file, e);
+            }
+        }
+    }
+
+    /**
+     * @return 是否写出了文件 (没有可写的区块时不写)
+     */
+    private static boolean writeRegion(Path file, Region region, int[] stamps) throws IOException {
+        Palette palette = new Palette();
+
+        // 先写数据部分，记下每个区块的偏移
+        ByteArrayOutputStream dataBytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(dataBytes);
+        List<ChunkRow> table = new ArrayList<>();
+
+        for (Long2ObjectMap.Entry<List<StoredEntry>> chunk : region.entries().long2ObjectEntrySet()) {
+            long chunkKey = chunk.getLongKey();
+            int stamp = stamps[regionSlot(ChunkPos.getPackedX(chunkKey), ChunkPos.getPackedZ(chunkKey))];
+            // 区块不在 .mca 里 (从未保存过)，无法判断新旧，不写
+            if (stamp == 0) continue;
+
+            table.add(new ChunkRow(chunkKey, stamp, data.size()));
+            data.writeInt(chunk.getValue().size());
+            for (StoredEntry entry : chunk.getValue()) {
+                ItemCounts counts = entry.counts();
+                data.writeLong(entry.pos());
+                data.writeInt(palette.block(entry.block()));
+                data.writeInt(counts.size());
+                for (int i = 0; i < counts.size(); i++) {
+                    data.writeInt(palette.item(Item.byRawId(counts.idAt(i))));
+                    data.writeInt(counts.countAt(i));
+                    data.writeInt(counts.nestedAt(i));
+                }
+            }
+        }
+        for (Long2ObjectMap.Entry<PersistedChunk> chunk : region.persisted().long2ObjectEntrySet()) {
+            long chunkKey = chunk.getLongKey();
+            int stamp = stamps[regionSlot(ChunkPos.getPackedX(chunkKey), ChunkPos.getPackedZ(chunkKey))];
+            if (stamp == 0) continue;
+
+            table.add(new ChunkRow(chunkKey, stamp, data.size()));
+            chunk.getValue().transcode(data, palette);
+        }
+        if (table.isEmpty()) return false;
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(palette.items.size());
+        for (Item item : palette.items) header.writeUTF(Registries.ITEM.getId(item).toString());
+        header.writeInt(palette.blocks.size());
+        for (Block block : palette.blocks) header.writeUTF(Registries.BLOCK.getId(block).toString());
+        header.writeInt(table.size());
+        int dataStart = header.size() + table.size() * 16;
+        for (ChunkRow row : table) {
+            header.writeLong(row.chunkKey());
+            header.writeInt(row.stamp());
+            header.writeInt(dataStart + row.offset());
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(headerBytes.toByteArray()));
+            channel.write(ByteBuffer.wrap(dataBytes.toByteArray()));
+            channel.force(true);
+        }
+
+        Path pending = file.resolveSibling(file.getFileName() + PENDING_SUFFIX);
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(pending);
+        } catch (IOException e) {
+            // 旧文件的映射还没被回收 (Windows) 或不支持原子替换：新文件已经完整，留到下次启动映射之前换上
+            Files.move(temp, pending, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return true;
+    }
+
+    /**
+     * 映射之前收尾上次的写盘：删除写到一半的 .tmp，换上没能替换旧文件的 .pending
+     */
+    private static void finishPendingWrites(Path dir) throws IOException {
+        for (Path file : list(dir)) {
+            String name = file.getFileName().toString();
+            try {
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.delete(file);
+                } else if (name.endsWith(PENDING_SUFFIX)) {
+                    Files.move(file, file.resolveSibling(name.substring(0, name.length() - PENDING_SUFFIX.length())), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                ContainerSearchCommand.LOGGER.warn("Failed to finish writing container index file {}", file, e);
+            }
+        }
+    }
+
+    private static List<Path> list(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path file : stream) files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * 世界加载时调用：映射各区域文件，时间戳仍然一致的区块登记到索引，等第一次用到时解码
+     */
+    public static void load(ServerWorld world) {
+        if (!ContainerSearchCommand.CONFIG.persistIndex) return;
+
+        Path worldDir = DimensionType.getSaveDirectory(world.getRegistryKey(), world.getServer().getSavePath(WorldSavePath.ROOT));
+        Path dir = indexDir(worldDir);
+        if (!Files.isDirectory(dir)) return;
+
+        ContainerIndex index = ContainerIndex.get(world);
+        int restored = 0;
+        int stale = 0;
+        try {
+            finishPendingWrites(dir);
+        } catch (IOException e) {
+            ContainerSearchCommand.LOGGER.warn("Failed to list container index of {}", world.getRegistryKey().getValue(), e);
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + EXTENSION)) {
+            for (Path file : files) {
+                try {
+                    int[] result = loadRegion(worldDir, file, index);
+                    restored += result[0];
+                    stale += result[1];
+                } catch (Exception e) {
+                    ContainerSearchCommand.LOGGER.warn("Ignoring unreadable container index file {}", file, e);
+                }
+            }
+        } catch (IOException e) {
+            ContainerSearchCommand.LOGGER.warn("Failed to list container index of {}", world.getRegistryKey().getValue(), e);
+        }
+        ContainerSearchCommand.LOGGER.info("Mapped container index of {}: {} chunks, {} stale", world.getRegistryKey().getValue(), restored, stale);
+    }
+
+    /**
+     * @return {登记的区块数, 过时的区块数}
+     */
+    private static int[] loadRegion(Path worldDir, Path file, ContainerIndex index) throws IOException {
+        String[] name = file.getFileName().toString().split("\\.");
+        int[] stamps = readStamps(worldDir, Integer.parseInt(name[1]), Integer.parseInt(name[2]));
+        if (stamps == null) return new int[]{0, 0};
+
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // 映射在通道关闭后仍然有效
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return new int[]{0, 0};
+
+        int[] items = new int[buffer.getInt()];
+        for (int i = 0; i < items.length; i++) {
+            Identifier id = Identifier.tryParse(readUtf(buffer));
+            items[i] = id != null && Registries.ITEM.containsId(id) ? Item.getRawId(Registries.ITEM.get(id)) : -1;
+        }
+        Block[] blocks = new Block[buffer.getInt()];
+        for (int i = 0; i < blocks.length; i++) {
+            Identifier id = Identifier.tryParse(readUtf(buffer));
+            blocks[i] = id != null && Registries.BLOCK.containsId(id) ? Registries.BLOCK.get(id) : null;
+        }
+
+        int restored = 0;
+        int stale = 0;
+        int chunkCount = buffer.getInt();
+        for (int i = 0; i < chunkCount; i++) {
+            long chunkKey = buffer.getLong();
+            int stamp = buffer.getInt();
+            int offset = buffer.getInt();
+
+            if (stamps[regionSlot(ChunkPos.getPackedX(chunkKey), ChunkPos.getPackedZ(chunkKey))] != stamp) {
+                stale++;
+                continue;
+            }
+            index.addPersisted(chunkKey, new PersistedChunk(buffer, offset, items, blocks));
+            restored++;
+        }
+        return new int[]{restored, stale};
+    }
+
+    /**
+     * 读取 .mca 文件头第二个 4KB 扇区中的 1024 个区块修改时间戳；文件不存在时返回 null
+     */
+    private static int[] readStamps(Path worldDir, int regionX, int regionZ) throws IOException {
+        Path mca = worldDir.resolve("region").resolve("r." + regionX + "." + regionZ + ".mca");
+        if (!Files.exists(mca)) return null;
+
+        ByteBuffer header = ByteBuffer.allocate(4096);
+        try (FileChannel channel = FileChannel.open(mca, StandardOpenOption.READ)) {
+            channel.read(header, 4096);
+        }
+        header.flip();
+        int[] stamps = new int[1024];
+        for (int i = 0; i < stamps.length && header.remaining() >= 4; i++) stamps[i] = header.getInt();
+        return stamps;
+    }
+
+    private static int regionSlot(int chunkX, int chunkZ) {
+        return (chunkX & 31) + (chunkZ & 31) * 32;
+    }
+
+    private static String readUtf(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        // 物品和方块 id 都是 ASCII，modified UTF-8 与 UTF-8 一致
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Path indexDir(Path worldDir) {
+        return worldDir.resolve("data").resolve(ContainerSearchCommand.MOD_ID);
+    }
+}
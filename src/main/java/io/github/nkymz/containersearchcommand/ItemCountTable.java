@@ -0,0 +1,156 @@
+package io.github.nkymz.containersearchcommand;
+
+import it.unimi.dsi.fastutil.HashCommon;
+
+import java.util.Arrays;
+
+/**
+ * 可复用的 物品 raw id → 数量 开放寻址表，只用 int 数组，没有装箱。
+ * 另外单独记录其中有多少是在嵌套容器 (潜影盒、收纳袋) 里找到的。
+ * <p>
+ * 扫描容器时作为草稿表反复 {@link #clear} 复用，扫描结束后用 {@link #freeze} 压缩成不可变的 {@link ItemCounts}。
+ * 不是线程安全的，每个线程各用各的。
+ */
+public final class ItemCountTable {
+
+    // 存 raw id + 1，0 表示空槽
+    private int[] keys;
+    private int[] values;
+    // 其中位于嵌套容器内的数量
+    private int[] nested;
+    private boolean anyNested;
+    // 已占用的槽位下标，用于快速清空和遍历
+    private int[] used;
+    private int size;
+    private int mask;
+
+    public ItemCountTable() {
+        this(64);
+    }
+
+    public ItemCountTable(int expected) {
+        int capacity = HashCommon.arraySize(expected, 0.5f);
+        keys = new int[capacity];
+        values = new int[capacity];
+        nested = new int[capacity];
+        used = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    public void add(int rawId, int count) {
+        add(rawId, count, 0);
+    }
+
+    /**
+     * 累加在嵌套容器里找到的物品，同时计入总数
+     */
+    public void addNested(int rawId, int count) {
+        add(rawId, count, count);
+        anyNested = true;
+    }
+
+    private void add(int rawId, int count, int nestedCount) {
+        int key = rawId + 1;
+        int slot = HashCommon.mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                values[slot] += count;
+                nested[slot] += nestedCount;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = count;
+        nested[slot] = nestedCount;
+        used[size++] = slot;
+        if (size * 2 > keys.length) rehash(keys.length * 2);
+    }
+
+    public int get(int rawId) {
+        int key = rawId + 1;
+        int slot = HashCommon.mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    public int getNested(int rawId) {
+        int key = rawId + 1;
+        int slot = HashCommon.mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) return nested[slot];
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 只清理用过的槽位，代价和上一次的物品种类数成正比，而不是和容量成正比
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            keys[used[i]] = 0;
+        }
+        size = 0;
+        anyNested = false;
+    }
+
+    /**
+     * 按 raw id 排序压缩成不可变的 {@link ItemCounts}
+     */
+    public ItemCounts freeze() {
+        if (size == 0) return ItemCounts.EMPTY;
+
+        // raw id 非负，高 32 位放 id、低 32 位放槽位，排序后就是按 id 有序
+        long[] packed = new long[size];
+        for (int i = 0; i < size; i++) {
+            int slot = used[i];
+            packed[i] = ((long) (keys[slot] - 1) << 32) | slot;
+        }
+        Arrays.sort(packed);
+
+        int[] ids = new int[size];
+        int[] counts = new int[size];
+        // 大多数容器没有嵌套内容，这时不分配第三个数组
+        int[] nestedCounts = anyNested ? new int[size] : null;
+        for (int i = 0; i < size; i++) {
+            int slot = (int) packed[i];
+            ids[i] = (int) (packed[i] >>> 32);
+            counts[i] = values[slot];
+            if (nestedCounts != null) nestedCounts[i] = nested[slot];
+        }
+        return new ItemCounts(ids, counts, nestedCounts);
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        int[] oldNested = nested;
+        int[] oldUsed = used;
+        int oldSize = size;
+
+        keys = new int[capacity];
+        values = new int[capacity];
+        nested = new int[capacity];
+        used = new int[capacity];
+        mask = capacity - 1;
+        size = 0;
+
+        for (int i = 0; i < oldSize; i++) {
+            int slot = oldUsed[i];
+            add(oldKeys[slot] - 1, oldValues[slot], oldNested[slot]);
+        }
+    }
+}
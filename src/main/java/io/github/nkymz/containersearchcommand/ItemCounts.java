@@ -0,0 +1,59 @@
+package io.github.nkymz.containersearchcommand;
+
+import java.util.Arrays;
+
+/**
+ * 一个容器的不可变物品统计：按 raw id 升序排列的两个并行 int 数组。
+ * 比每个容器一个 HashMap 紧凑得多，查找用二分。
+ * 有嵌套内容时另有第三个数组，记录每种物品中位于潜影盒、收纳袋里的数量。
+ */
+public final class ItemCounts {
+
+    public static final ItemCounts EMPTY = new ItemCounts(new int[0], new int[0], null);
+
+    private final int[] ids;
+    private final int[] counts;
+    // 位于嵌套容器内的数量，没有嵌套内容时为 null
+    private final int[] nested;
+
+    ItemCounts(int[] ids, int[] counts, int[] nested) {
+        this.ids = ids;
+        this.counts = counts;
+        this.nested = nested;
+    }
+
+    public int get(int rawId) {
+        int i = Arrays.binarySearch(ids, rawId);
+        return i >= 0 ? counts[i] : 0;
+    }
+
+    public int getNested(int rawId) {
+        if (nested == null) return 0;
+        int i = Arrays.binarySearch(ids, rawId);
+        return i >= 0 ? nested[i] : 0;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public boolean isEmpty() {
+        return ids.length == 0;
+    }
+
+    public boolean hasNested() {
+        return nested != null;
+    }
+
+    public int idAt(int i) {
+        return ids[i];
+    }
+
+    public int countAt(int i) {
+        return counts[i];
+    }
+
+    public int nestedAt(int i) {
+        return nested == null ? 0 : nested[i];
+    }
+}
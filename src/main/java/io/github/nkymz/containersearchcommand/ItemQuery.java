@@ -0,0 +1,140 @@
+package io.github.nkymz.containersearchcommand;
+
+import net.minecraft.component.DataComponentTypes;
+import net.minecraft.component.type.BundleContentsComponent;
+import net.minecraft.component.type.ContainerComponent;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.registry.tag.TagKey;
+import net.minecraft.util.Identifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * 要搜索的物品：一组候选物品的 raw id，外加可选的物品组件条件。
+ * <p>
+ * 指令里的物品谓词 (如 enchanted_book[stored_enchantments~[{enchantments:"minecraft:mending"}]]、#minecraft:logs)
+ * 在解析时拆成两部分：谓词开头的物品 id 或物品标签一次性展开成 raw id，先用容器索引做便宜的 id 查找；
+ * 带组件条件时，只对 id 命中的容器重新读取物品栏、逐个物品检查组件，得到精确的数量。
+ */
+public final class ItemQuery {
+
+    final Item[] items;
+    final int[] rawIds;
+    // 组件条件，只按物品 id 匹配时为 null
+    private final Predicate<ItemStack> precise;
+    // 显示在“正在搜索”提示里的名字
+    final String label;
+
+    private ItemQuery(Item[] items, Predicate<ItemStack> precise, String label) {
+        this.items = items;
+        this.rawIds = new int[items.length];
+        for (int i = 0; i < items.length; i++) rawIds[i] = Item.getRawId(items[i]);
+        this.precise = precise;
+        this.label = label;
+    }
+
+    public static ItemQuery of(Item[] items) {
+        StringBuilder names = new StringBuilder();
+        for (Item item : items) {
+            if (!names.isEmpty()) names.append(", ");
+            names.append(item.getName().getString());
+        }
+        return new ItemQuery(items, null, names.toString());
+    }
+
+    /**
+     * 由物品谓词的原文和解析好的谓词构造；谓词开头必须是具体的物品 id 或物品标签，否则抛出 IllegalArgumentException
+     */
+    public static ItemQuery parse(String input, Predicate<ItemStack> predicate) {
+        int end = input.length();
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '[' || c == '{') {
+                end = i;
+                break;
+            }
+        }
+        String head = input.substring(0, end).toLowerCase(Locale.ROOT);
+        // 只有物品 id 或标签、没有组件条件时，索引里的数量就是准确的
+        Predicate<ItemStack> precise = end < input.length() ? predicate : null;
+
+        List<Item> items = new ArrayList<>();
+        if (head.startsWith("#")) {
+            Identifier id = Identifier.tryParse(head.substring(1));
+            if (id == null) throw new IllegalArgumentException(head);
+
+            TagKey<Item> tag = TagKey.of(RegistryKeys.ITEM, id);
+            for (Item item : Registries.ITEM) {
+                if (Registries.ITEM.getEntry(item).isIn(tag)) items.add(item);
+            }
+        } else {
+            Identifier id = Identifier.tryParse(head);
+            if (id == null || !Registries.ITEM.containsId(id)) throw new IllegalArgumentException(head);
+            items.add(Registries.ITEM.get(id));
+        }
+        if (items.isEmpty()) throw new IllegalArgumentException(head);
+
+        return new ItemQuery(items.toArray(new Item[0]), precise, input);
+    }
+
+    public boolean isPrecise() {
+        return precise != null;
+    }
+
+    /**
+     * 精确统计容器中 (含嵌套容器) 满足组件条件的该物品数量。只在主线程、只对索引命中的容器调用
+     *
+     * @param out out[0] 为总数，out[1] 为其中位于嵌套容器内的数量
+     */
+    public void countPrecise(Inventory inventory, Item item, NestingStack stack, int[] out) {
+        out[0] = 0;
+        out[1] = 0;
+        int maxDepth = ContainerSearchCommand.CONFIG.maxNestingDepth;
+
+        for (int i = 0; i < inventory.size(); i++) {
+            ItemStack itemStack = inventory.getStack(i);
+            if (itemStack.isEmpty()) continue;
+
+            if (itemStack.isOf(item) && precise.test(itemStack)) out[0] += itemStack.getCount();
+            if (maxDepth > 0) pushNested(stack, itemStack, 1);
+        }
+
+        while (!stack.isEmpty()) {
+            int depth = stack.peekDepth();
+            Object component = stack.pop();
+
+            if (component instanceof ContainerComponent containerData) {
+                for (ItemStack innerStack : containerData.iterateNonEmpty()) {
+                    countNested(stack, innerStack, item, depth, maxDepth, out);
+                }
+            } else if (component instanceof BundleContentsComponent bundleData) {
+                for (int j = 0; j < bundleData.size(); j++) {
+                    countNested(stack, bundleData.get(j), item, depth, maxDepth, out);
+                }
+            }
+        }
+    }
+
+    private void countNested(NestingStack stack, ItemStack innerStack, Item item, int depth, int maxDepth, int[] out) {
+        if (innerStack.isOf(item) && precise.test(innerStack)) {
+            out[0] += innerStack.getCount();
+            out[1] += innerStack.getCount();
+        }
+        if (depth < maxDepth) pushNested(stack, innerStack, depth + 1);
+    }
+
+    private static void pushNested(NestingStack stack, ItemStack itemStack, int depth) {
+        ContainerComponent containerData = itemStack.get(DataComponentTypes.CONTAINER);
+        if (containerData != null) stack.push(containerData, depth);
+
+        BundleContentsComponent bundleData = itemStack.get(DataComponentTypes.BUNDLE_CONTENTS);
+        if (bundleData != null) stack.push(bundleData, depth);
+    }
+}
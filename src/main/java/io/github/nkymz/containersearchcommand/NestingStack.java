@@ -0,0 +1,45 @@
+package io.github.nkymz.containersearchcommand;
+
+import java.util.Arrays;
+
+/**
+ * 展开嵌套容器 (潜影盒里的收纳袋、收纳袋里的潜影盒……) 用的显式栈，代替递归。
+ * <p>
+ * 和 {@link ItemCountTable} 一样由调用方按线程持有、反复复用，扩容后不再缩小，稳定状态下不分配内存。
+ */
+public final class NestingStack {
+
+    // ContainerComponent 或 BundleContentsComponent；读取区域文件时是物品的 NBT 标签
+    private Object[] components = new Object[16];
+    // 对应组件所在的嵌套层数，顶层物品里的组件为 1；物品标签则是物品本身的层数，顶层物品为 0
+    private int[] depths = new int[16];
+    private int size = 0;
+
+    public void push(Object component, int depth) {
+        if (size == components.length) {
+            components = Arrays.copyOf(components, size * 2);
+            depths = Arrays.copyOf(depths, size * 2);
+        }
+        components[size] = component;
+        depths[size] = depth;
+        size++;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 栈顶组件的层数，须在 {@link #pop} 之前读取
+     */
+    public int peekDepth() {
+        return depths[size - 1];
+    }
+
+    public Object pop() {
+        Object component = components[--size];
+        // 不持有已经展开过的组件
+        components[size] = null;
+        return component;
+    }
+}
@@ -0,0 +1,166 @@
+package io.github.nkymz.containersearchcommand;
+
+import net.minecraft.SharedConstants;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockEntityProvider;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.block.entity.BlockEntityType;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.inventory.SimpleInventory;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtInt;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.scanner.NbtScanQuery;
+import net.minecraft.nbt.scanner.SelectiveNbtCollector;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.RegistryWrapper;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 未加载区块的搜索：不把区块加载进世界，直接从区域文件读取区块 NBT。
+ * <p>
+ * 通过世界自己的区块 IO 线程按需扫描 NBT，只收集 DataVersion 和 block_entities 两个字段，
+ * 其余数据 (方块、光照、高度图) 在流式解析时直接跳过；还没写盘的区块由 IO 线程从待写队列里读取。
+ * 容器里的物品按原始的 Items 标签统计，在工作线程池中完成，主线程只分发命中。
+ * 实体保存在单独的 entities 区域文件中，不在这里搜索。
+ */
+public final class RegionScanner {
+
+    // 方块实体类型 → 显示和过滤用的方块。同一类型对应多个方块 (如各色潜影盒) 时，优先取 id 相同的那个
+    private static Map<BlockEntityType<?>, Block> containerTypes;
+
+    private RegionScanner() {
+    }
+
+    /**
+     * 未加载区块中的一个容器
+     *
+     * @param items 原始的 Items 标签，带组件条件的搜索需要时才解码成物品
+     */
+    public record StoredContainer(long pos, Block block, ItemCounts counts, NbtList items) {
+
+        /**
+         * 解码成物品栏，供 {@link ItemQuery#countPrecise} 检查组件条件。只在主线程调用
+         */
+        public Inventory decode(RegistryWrapper.WrapperLookup registries) {
+            SimpleInventory inventory = new SimpleInventory(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                int slot = i;
+                ItemStack.fromNbt(registries, items.getCompound(i)).ifPresent(stack -> inventory.setStack(slot, stack));
+            }
+            return inventory;
+        }
+    }
+
+    /**
+     * 在区块 IO 线程上流式读取区块 NBT，再在工作线程池中统计各容器的物品。
+     * 区块不存在、是旧版本格式 (需要数据修复) 时返回空列表
+     */
+    public static CompletableFuture<List<StoredContainer>> scan(ServerWorld world, int chunkX, int chunkZ, SearchStats stats) {
+        SelectiveNbtCollector collector = new SelectiveNbtCollector(
+                new NbtScanQuery(NbtInt.TYPE, "DataVersion"),
+                new NbtScanQuery(NbtList.TYPE, "block_entities"));
+
+        return world.getChunkManager().getChunkIoWorker()
+                .scanChunk(new ChunkPos(chunkX, chunkZ), collector)
+                .thenApplyAsync(ignored -> {
+                    stats.unloadedChunksRead.increment();
+                    return parse(collector.getRoot(), stats);
+                }, ScanWorkers.pool());
+    }
+
+    private static List<StoredContainer> parse(NbtElement root, SearchStats stats) {
+        if (!(root instanceof NbtCompound chunk)) return List.of();
+        if (chunk.getInt("DataVersion") != SharedConstants.getGameVersion().getSaveVersion().getId()) return List.of();
+
+        NbtList blockEntities = chunk.getList("block_entities", NbtElement.COMPOUND_TYPE);
+        List<StoredContainer> containers = new ArrayList<>();
+        ItemCountTable table = new ItemCountTable();
+        NestingStack stack = new NestingStack();
+        for (int i = 0; i < blockEntities.size(); i++) {
+            NbtCompound blockEntity = blockEntities.getCompound(i);
+            if (!blockEntity.contains("Items", NbtElement.LIST_TYPE)) continue;
+
+            Identifier typeId = Identifier.tryParse(blockEntity.getString("id"));
+            Block block = typeId != null ? containerTypes().get(Registries.BLOCK_ENTITY_TYPE.get(typeId)) : null;
+            if (block == null) continue;
+
+            NbtList items = blockEntity.getList("Items", NbtElement.COMPOUND_TYPE);
+            table.clear();
+            int maxDepth = ContainerSearchCommand.CONFIG.maxNestingDepth;
+            for (int j = 0; j < items.size(); j++) stack.push(items.getCompound(j), 0);
+            while (!stack.isEmpty()) {
+                int depth = stack.peekDepth();
+                countStack(table, stack, (NbtCompound) stack.pop(), depth, maxDepth);
+            }
+            stats.slotsRead.add(items.size());
+            if (table.isEmpty()) continue;
+
+            long pos = BlockPos.asLong(blockEntity.getInt("x"), blockEntity.getInt("y"), blockEntity.getInt("z"));
+            containers.add(new StoredContainer(pos, block, table.freeze(), items));
+        }
+        return containers;
+    }
+
+    /**
+     * 统计一个物品标签，未到最大层数时把 minecraft:container 和 minecraft:bundle_contents 组件里的物品压栈，
+     * 和 {@link ContainerSnapshot#aggregate} 一样逐层展开而不递归
+     */
+    private static void countStack(ItemCountTable table, NestingStack stack, NbtCompound itemStack, int depth, int maxDepth) {
+        Identifier id = Identifier.tryParse(itemStack.getString("id"));
+        if (id == null || !Registries.ITEM.containsId(id)) return;
+
+        int rawId = Item.getRawId(Registries.ITEM.get(id));
+        int count = Math.max(1, itemStack.getInt("count"));
+        if (depth == 0) {
+            table.add(rawId, count);
+        } else {
+            table.addNested(rawId, count);
+        }
+
+        if (depth >= maxDepth || !itemStack.contains("components", NbtElement.COMPOUND_TYPE)) return;
+        NbtCompound components = itemStack.getCompound("components");
+
+        NbtList container = components.getList("minecraft:container", NbtElement.COMPOUND_TYPE);
+        for (int i = 0; i < container.size(); i++) {
+            stack.push(container.getCompound(i).getCompound("item"), depth + 1);
+        }
+        NbtList bundle = components.getList("minecraft:bundle_contents", NbtElement.COMPOUND_TYPE);
+        for (int i = 0; i < bundle.size(); i++) {
+            stack.push(bundle.getCompound(i), depth + 1);
+        }
+    }
+
+    private static synchronized Map<BlockEntityType<?>, Block> containerTypes() {
+        if (containerTypes == null) {
+            Map<BlockEntityType<?>, Block> types = new HashMap<>();
+            for (Block block : Registries.BLOCK) {
+                if (!(block instanceof BlockEntityProvider provider)) continue;
+                try {
+                    BlockEntity blockEntity = provider.createBlockEntity(BlockPos.ORIGIN, block.getDefaultState());
+                    if (!(blockEntity instanceof Inventory)) continue;
+
+                    BlockEntityType<?> type = blockEntity.getType();
+                    Identifier typeId = Registries.BLOCK_ENTITY_TYPE.getId(type);
+                    if (!types.containsKey(type) || Registries.BLOCK.getId(block).equals(typeId)) types.put(type, block);
+                } catch (Exception e) {
+                    // 有些模组的方块实体不能脱离世界创建，这类容器在未加载区块中搜不到
+                }
+            }
+            containerTypes = types;
+        }
+        return containerTypes;
+    }
+}
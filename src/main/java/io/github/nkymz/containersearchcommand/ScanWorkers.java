@@ -0,0 +1,62 @@
+package io.github.nkymz.containersearchcommand;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并行扫描用的工作线程池。主线程只负责抓取 {@link ContainerSnapshot}，汇总统计交给这里。
+ */
+public class ScanWorkers {
+
+    private static ForkJoinPool pool;
+
+    public record Result(ContainerSnapshot snapshot, ItemCounts counts) {
+    }
+
+    public static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            int threads = ContainerSearchCommand.CONFIG.scanThreads;
+            if (threads <= 0) threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+            AtomicInteger counter = new AtomicInteger();
+            pool = new ForkJoinPool(threads, p -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setName("ContainerSearch-Worker-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, (thread, e) -> ContainerSearchCommand.LOGGER.error("Uncaught exception in {}", thread.getName(), e), false);
+        }
+        return pool;
+    }
+
+    /**
+     * 在线程池上汇总一批快照 (通常是一个区块的脏容器)，不同批次之间并行执行
+     */
+    public static CompletableFuture<List<Result>> aggregateAsync(List<ContainerSnapshot> snapshots, SearchStats stats) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<Result> results = new ArrayList<>(snapshots.size());
+            // 草稿表和嵌套展开栈在整批快照之间复用
+            ItemCountTable table = new ItemCountTable();
+            NestingStack stack = new NestingStack();
+            int expanded = 0;
+            for (ContainerSnapshot snapshot : snapshots) {
+                table.clear();
+                expanded += snapshot.aggregate(table, stack);
+                results.add(new Result(snapshot, table.freeze()));
+            }
+            stats.nestedStacksExpanded.add(expanded);
+            return results;
+        }, pool());
+    }
+
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+        }
+    }
+}
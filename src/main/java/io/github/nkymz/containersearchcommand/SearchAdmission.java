@@ -0,0 +1,70 @@
+package io.github.nkymz.containersearchcommand;
+
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * /fr 的准入控制：在搜索开始之前检查冷却时间和预估成本。
+ * 全服同时进行的搜索数上限由 {@link SearchScheduler} 的等待队列实现。
+ * <p>
+ * 预估成本按范围内的区块和容器索引中已知的容器数计算：已加载区块的方块实体加载时都会记进索引，
+ * 所以不需要遍历任何方块实体就能知道大致要读多少个容器。
+ */
+public final class SearchAdmission {
+
+    // 每个已加载区块本身的成本 (判断加载、查倒排表、查实体)，折算成容器数
+    static final int LOADED_CHUNK_COST = 4;
+    // 每个未加载区块的成本，一次磁盘读取和 NBT 解析
+    static final int UNLOADED_CHUNK_COST = 64;
+
+    // 玩家 → 上次开始搜索的 tick；重新登录不会重置冷却
+    private static final Map<UUID, Integer> LAST_SEARCH = new HashMap<>();
+
+    private SearchAdmission() {
+    }
+
+    /**
+     * 还需要等待的冷却时间 (tick)，0 表示可以搜索
+     */
+    public static int cooldownTicks(ServerCommandSource source, ServerPlayerEntity player) {
+        int cooldown = ContainerSearchCommand.CONFIG.searchCooldownSeconds * 20;
+        if (cooldown <= 0 || source.hasPermissionLevel(2)) return 0;
+
+        Integer last = LAST_SEARCH.get(player.getUuid());
+        if (last == null) return 0;
+        return Math.max(0, last + cooldown - source.getServer().getTicks());
+    }
+
+    public static void recordSearch(ServerCommandSource source, ServerPlayerEntity player) {
+        LAST_SEARCH.put(player.getUuid(), source.getServer().getTicks());
+    }
+
+    /**
+     * 按搜索范围内的区块和已知容器数预估成本，单位相当于读取一个容器
+     */
+    public static long estimateCost(ServerWorld world, SearchArea area) {
+        ContainerIndex index = ContainerIndex.get(world);
+        boolean unloaded = ContainerSearchCommand.CONFIG.searchUnloadedChunks;
+
+        long cost = 0;
+        for (int i = 0; i < area.chunkCount(); i++) {
+            int cx = area.chunkX(i);
+            int cz = area.chunkZ(i);
+            if (world.isChunkLoaded(cx, cz)) {
+                cost += LOADED_CHUNK_COST + index.knownContainers(cx, cz);
+            } else if (unloaded) {
+                cost += UNLOADED_CHUNK_COST;
+            }
+        }
+        return cost;
+    }
+
+    public static void clear() {
+        LAST_SEARCH.clear();
+    }
+}
@@ -0,0 +1,141 @@
+package io.github.nkymz.containersearchcommand;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.HeightLimitView;
+
+/**
+ * 搜索范围：以玩家为中心的球体、圆柱或立方体。
+ * <p>
+ * 构造时只保留与形状相交的区块 (按区块内离中心最近的点判断)；
+ * 每个区块再按形状在该区块处的高度范围、以及世界高度收窄包围盒，
+ * 范围外的脏容器不会被重新扫描，命中最后再用 {@link #contains} 精确判断。
+ * 区块按离中心由近到远排列。
+ */
+public class SearchArea {
+
+    public enum Shape {
+        SPHERE, CYLINDER, CUBE
+    }
+
+    private final Shape shape;
+    private final int centerX;
+    private final int centerY;
+    private final int centerZ;
+    private final int radius;
+    private final long radiusSq;
+    private final int bottomY;
+    private final int topY;
+    // 与形状相交的区块 (ChunkPos.toLong)，按离中心由近到远排列
+    private final long[] chunks;
+
+    public SearchArea(Shape shape, BlockPos center, int radius, HeightLimitView world) {
+        this.shape = shape;
+        this.centerX = center.getX();
+        this.centerY = center.getY();
+        this.centerZ = center.getZ();
+        this.radius = radius;
+        this.radiusSq = (long) radius * radius;
+        this.bottomY = Math.max(world.getBottomY(), centerY - radius);
+        this.topY = Math.min(world.getTopYInclusive(), centerY + radius);
+
+        LongArrayList list = new LongArrayList();
+        for (int cz = (centerZ - radius) >> 4; cz <= (centerZ + radius) >> 4; cz++) {
+            for (int cx = (centerX - radius) >> 4; cx <= (centerX + radius) >> 4; cx++) {
+                if (coversChunk(cx, cz)) list.add(ChunkPos.toLong(cx, cz));
+            }
+        }
+        // 一圈一圈由近到远：最近优先的搜索可以提前结束，普通搜索也能先找到近处的结果
+        long[] sorted = list.toLongArray();
+        LongArrays.quickSort(sorted, (a, b) -> Long.compare(
+                nearestDistanceSq(ChunkPos.getPackedX(a), ChunkPos.getPackedZ(a)),
+                nearestDistanceSq(ChunkPos.getPackedX(b), ChunkPos.getPackedZ(b))));
+        this.chunks = sorted;
+    }
+
+    /**
+     * 形状是否与该区块相交
+     */
+    public boolean coversChunk(int cx, int cz) {
+        if (bottomY > topY) return false;
+        if (cx < (centerX - radius) >> 4 || cx > (centerX + radius) >> 4 || cz < (centerZ - radius) >> 4 || cz > (centerZ + radius) >> 4) {
+            return false;
+        }
+        if (shape != Shape.CUBE && nearestDistanceSq(cx, cz) > radiusSq) return false;
+
+        // 形状在此处的高度范围整个落在世界之外
+        int halfHeight = halfHeight(cx, cz);
+        return Math.max(bottomY, centerY - halfHeight) <= Math.min(topY, centerY + halfHeight);
+    }
+
+    /**
+     * 两个范围的外接长方体是否相交，用来判断两次搜索能否合并
+     */
+    public boolean overlaps(SearchArea other) {
+        return Math.abs(centerX - other.centerX) <= radius + other.radius
+                && Math.abs(centerZ - other.centerZ) <= radius + other.radius
+                && bottomY <= other.topY && other.bottomY <= topY;
+    }
+
+    public int chunkCount() {
+        return chunks.length;
+    }
+
+    public int chunkX(int i) {
+        return ChunkPos.getPackedX(chunks[i]);
+    }
+
+    public int chunkZ(int i) {
+        return ChunkPos.getPackedZ(chunks[i]);
+    }
+
+    /**
+     * 形状在该区块内的包围盒：水平方向裁到区块边界，垂直方向裁到形状在此处的高度范围和世界高度
+     */
+    public BlockBox chunkBox(int cx, int cz) {
+        int halfHeight = halfHeight(cx, cz);
+        return new BlockBox(
+                Math.max(cx << 4, centerX - radius), Math.max(bottomY, centerY - halfHeight), Math.max(cz << 4, centerZ - radius),
+                Math.min((cx << 4) + 15, centerX + radius), Math.min(topY, centerY + halfHeight), Math.min((cz << 4) + 15, centerZ + radius));
+    }
+
+    /**
+     * 精确判断坐标是否在形状内。合并搜索时包围盒是几个范围的并集，这里不能依赖 chunkBox 已经裁过
+     */
+    public boolean contains(long pos) {
+        long dx = BlockPos.unpackLongX(pos) - centerX;
+        long dy = BlockPos.unpackLongY(pos) - centerY;
+        long dz = BlockPos.unpackLongZ(pos) - centerZ;
+        if (Math.abs(dy) > radius) return false;
+
+        return switch (shape) {
+            case CUBE -> Math.abs(dx) <= radius && Math.abs(dz) <= radius;
+            case CYLINDER -> dx * dx + dz * dz <= radiusSq;
+            case SPHERE -> dx * dx + dy * dy + dz * dz <= radiusSq;
+        };
+    }
+
+    /**
+     * 区块内离中心最近的点到中心的水平距离平方，是区块内任意方块到中心距离平方的下界
+     */
+    public long chunkDistanceSq(int cx, int cz) {
+        return nearestDistanceSq(cx, cz);
+    }
+
+    private int halfHeight(int cx, int cz) {
+        if (shape != Shape.SPHERE) return radius;
+        return (int) Math.sqrt((double) (radiusSq - nearestDistanceSq(cx, cz)));
+    }
+
+    /**
+     * 区块内离中心最近的点到中心的水平距离平方
+     */
+    private long nearestDistanceSq(int cx, int cz) {
+        long dx = Math.max(0, Math.max((cx << 4) - centerX, centerX - ((cx << 4) + 15)));
+        long dz = Math.max(0, Math.max((cz << 4) - centerZ, centerZ - ((cz << 4) + 15)));
+        return dx * dx + dz * dz;
+    }
+}
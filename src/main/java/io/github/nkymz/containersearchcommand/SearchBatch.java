@@ -0,0 +1,470 @@
+package io.github.nkymz.containersearchcommand;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import net.minecraft.entity.Entity;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.TypeFilter;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 同一 tick 内提交、范围有重叠的一组搜索，合并成一次区块遍历，由 {@link SearchScheduler} 每 tick 执行若干片。
+ * <p>
+ * 每个区块只刷新一次脏容器、只查询一次实体，每个目标物品只查一次倒排表，
+ * 命中再分发给覆盖该区块、要找这个物品的各个搜索。多人同时在仓库附近搜索时，
+ * 成本随涉及的区块数增长，而不是随玩家数 × 区块数增长。只有一个搜索的批次和原来的单独搜索完全相同。
+ * <p>
+ * 每个搜索记录自己范围内还没处理完的区块，归零就立即出结果并让出并发名额，
+ * 小范围的搜索不用等同批次里大范围的搜索走完整个并集。
+ */
+public class SearchBatch {
+
+    private final ServerWorld world;
+    private final List<SearchJob> jobs;
+    // 各搜索范围内区块的并集，范围小的搜索的区块排在前面，同一搜索内按它自己的区块顺序
+    private final long[] chunks;
+    private int nextChunk = 0;
+    // 并行模式下已抓取快照、等待工作线程汇总的区块
+    private final ArrayDeque<PendingChunk> pending = new ArrayDeque<>();
+    // 正在从区域文件读取的未加载区块
+    private final ArrayDeque<UnloadedChunk> unloaded = new ArrayDeque<>();
+
+    // 目标物品 raw id → 要找它的搜索和它在该搜索中的物品序号
+    private final Int2ObjectOpenHashMap<List<Target>> targets = new Int2ObjectOpenHashMap<>();
+    private final int[] rawIds;
+
+    // 实体查询复用的列表、统计表和嵌套展开栈
+    private final List<Entity> entityBuffer = new ArrayList<>();
+    private final ItemCountTable entityCounts = new ItemCountTable();
+    private final NestingStack nestingStack = new NestingStack();
+
+    private final SearchStats stats;
+
+    private SearchBatch(List<SearchJob> jobs) {
+        this.jobs = jobs;
+        this.world = jobs.get(0).world;
+        this.stats = SearchStats.get(world);
+
+        // 小范围的搜索先走完自己的区块，先出结果
+        List<SearchJob> bySize = new ArrayList<>(jobs);
+        bySize.sort(Comparator.comparingInt(job -> job.area.chunkCount()));
+        LongLinkedOpenHashSet union = new LongLinkedOpenHashSet();
+        for (SearchJob job : bySize) {
+            for (int i = 0; i < job.area.chunkCount(); i++) union.add(ChunkPos.toLong(job.area.chunkX(i), job.area.chunkZ(i)));
+        }
+        for (SearchJob job : jobs) {
+            for (int i = 0; i < job.query.rawIds.length; i++) {
+                targets.computeIfAbsent(job.query.rawIds[i], k -> new ArrayList<>()).add(new Target(job, i));
+            }
+        }
+        this.chunks = union.toLongArray();
+        this.rawIds = targets.keySet().toIntArray();
+    }
+
+    /**
+     * 把同一 tick 内提交的搜索按维度和范围是否重叠分组；重叠关系可传递，A、B 和 B、C 重叠时三者合为一组。
+     * 最近优先的搜索单独成批，按自己的中心由近到远遍历，找够了就提前结束
+     */
+    public static List<SearchBatch> coalesce(List<SearchJob> submitted) {
+        List<List<SearchJob>> groups = new ArrayList<>();
+        for (SearchJob job : submitted) {
+            List<SearchJob> merged = new ArrayList<>();
+            merged.add(job);
+            if (ContainerSearchCommand.CONFIG.coalesceSearches && !job.isNearestFirst()) {
+                groups.removeIf(group -> {
+                    if (!overlaps(group, job)) return false;
+                    merged.addAll(group);
+                    return true;
+                });
+            }
+            groups.add(merged);
+        }
+
+        List<SearchBatch> batches = new ArrayList<>(groups.size());
+        for (List<SearchJob> group : groups) batches.add(new SearchBatch(group));
+        return batches;
+    }
+
+    private static boolean overlaps(List<SearchJob> group, SearchJob job) {
+        for (SearchJob other : group) {
+            if (other.isNearestFirst()) return false;
+            if (other.world == job.world && other.area.overlaps(job.area)) return true;
+        }
+        return false;
+    }
+
+    public boolean isDone() {
+        return nextChunk >= chunks.length && pending.isEmpty() && unloaded.isEmpty();
+    }
+
+    /**
+     * 还没有出结果、也没有取消的搜索数
+     */
+    public int activeJobs() {
+        int active = 0;
+        for (SearchJob job : jobs) {
+            if (job.isActive()) active++;
+        }
+        return active;
+    }
+
+    /**
+     * 所有搜索都已取消或已出结果，剩下的区块只属于被取消的搜索
+     */
+    public boolean isCancelled() {
+        for (SearchJob job : jobs) {
+            if (job.isActive()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 执行一个切片：刷新切片内各区块的脏容器，然后查找命中。
+     * 并行模式下脏容器只抓取快照，对应区块的命中要等工作线程汇总完、写回索引后再发送。
+     * 开启未加载区块搜索时，未加载的区块交给区块 IO 线程读取，读完后再发送命中。
+     *
+     * @return 本次是否有进展；只是在等待工作线程或磁盘读取时返回 false
+     */
+    public boolean runSlice(SearchConfig config) {
+        long sliceStart = System.nanoTime();
+        ContainerIndex index = ContainerIndex.get(world);
+        boolean progressed = drainPending(index);
+        progressed |= drainUnloaded();
+
+        int start = nextChunk;
+        int end = Math.min(nextChunk + config.chunksPerSlice, chunks.length);
+        for (; nextChunk < end; nextChunk++) {
+            int cx = ChunkPos.getPackedX(chunks[nextChunk]);
+            int cz = ChunkPos.getPackedZ(chunks[nextChunk]);
+
+            // 未加载区块默认跳过；开启时从区域文件读取，同时在读的区块数有上限，读满了就等下一个切片
+            if (!world.isChunkLoaded(cx, cz)) {
+                if (!config.searchUnloadedChunks) {
+                    coverChunk(cx, cz);
+                    completeChunk();
+                    continue;
+                }
+                BlockBox box = coverChunk(cx, cz);
+                if (box == null) continue;
+
+                // 冷缓存或磁盘索引里有完整条目时直接查索引；带组件条件的搜索需要原始物品标签，仍然读取区域文件
+                if (!anyPreciseCovers() && index.hasColdEntries(cx, cz)) {
+                    stats.chunksVisited.increment();
+                    index.refreshChunk(cx, cz, box);
+                    emitHits(index, cx, cz, box);
+                    completeChunk();
+                    continue;
+                }
+                if (unloaded.size() >= config.maxUnloadedReads) break;
+                unloaded.addLast(new UnloadedChunk(cx, cz, RegionScanner.scan(world, cx, cz, stats)));
+                continue;
+            }
+
+            // 按形状收窄到该区块内的高度范围，范围外的脏容器不重新扫描
+            BlockBox box = coverChunk(cx, cz);
+            if (box == null) continue;
+            stats.chunksVisited.increment();
+
+            if (config.parallelScan) {
+                // 其他搜索抓取的快照还没写回时，等它们写回再发送命中，不发送旧内容；要在自己抓取之前取，不等自己
+                CompletableFuture<Void> settling = index.settling(cx, cz, box);
+                ContainerIndex.Capture capture = index.captureChunk(cx, cz, box);
+                if (capture != null || settling != null) {
+                    CompletableFuture<List<ScanWorkers.Result>> future = capture != null
+                            ? ScanWorkers.aggregateAsync(capture.snapshots, stats)
+                            : CompletableFuture.completedFuture(List.of());
+                    if (settling != null) future = future.thenCombine(settling, (results, settled) -> results);
+                    pending.addLast(new PendingChunk(cx, cz, capture, future));
+                    continue;
+                }
+            } else {
+                // 【优化 4】 查询容器索引，而不是遍历区块的方块实体：只重新扫描脏容器，之后是一次倒排表查找
+                index.refreshChunk(cx, cz, box);
+            }
+            emitHits(index, cx, cz, box);
+            if (config.scanEntities) emitEntityHits(cx, cz, box);
+            completeChunk();
+        }
+        finishCompleted(System.nanoTime() - sliceStart);
+        sendProgress();
+        stopIfSatisfied();
+        return progressed || nextChunk > start;
+    }
+
+    /**
+     * 当前区块已处理完 (包括读取失败、跳过的)，覆盖它的搜索各自少一个剩余区块
+     */
+    private void completeChunk() {
+        for (SearchJob job : jobs) {
+            if (job.coversChunk) job.remainingChunks--;
+        }
+    }
+
+    /**
+     * 自己范围内的区块都处理完的搜索立即出结果，不等同批次的其他搜索。
+     * 本切片到目前为止的主线程时间先分摊给它，之后的 {@link #addMainThreadNanos} 只分给仍在进行的搜索
+     */
+    private void finishCompleted(long sliceNanos) {
+        int active = activeJobs();
+        for (SearchJob job : jobs) {
+            if (!job.isActive() || job.remainingChunks > 0) continue;
+            job.addMainThreadNanos(sliceNanos / active);
+            job.finish();
+        }
+    }
+
+    /**
+     * 最近优先的搜索：离中心比下一个未完成区块更近的范围都已搜完，其中的结果已经足够时，剩下的区块不再遍历
+     */
+    private void stopIfSatisfied() {
+        SearchJob job = jobs.get(0);
+        if (jobs.size() != 1 || !job.isNearestFirst()) return;
+
+        // 区块按距离排列，等待中的区块一定比后面还没开始的更近
+        long frontier = Long.MAX_VALUE;
+        if (!pending.isEmpty()) frontier = Math.min(frontier, job.area.chunkDistanceSq(pending.peekFirst().x(), pending.peekFirst().z()));
+        if (!unloaded.isEmpty()) frontier = Math.min(frontier, job.area.chunkDistanceSq(unloaded.peekFirst().x(), unloaded.peekFirst().z()));
+        if (nextChunk < chunks.length) {
+            frontier = Math.min(frontier, job.area.chunkDistanceSq(ChunkPos.getPackedX(chunks[nextChunk]), ChunkPos.getPackedZ(chunks[nextChunk])));
+        }
+        if (frontier == Long.MAX_VALUE || !job.isSatisfied(frontier)) return;
+
+        nextChunk = chunks.length;
+        discard();
+    }
+
+    /**
+     * 放弃还在汇总的区块：抓取快照时清掉的脏标记重新记上，其他搜索也不再等待它们。
+     * 批次提前结束、被取消或出错时调用
+     */
+    void discard() {
+        ContainerIndex index = ContainerIndex.get(world);
+        for (PendingChunk chunk : pending) {
+            if (chunk.capture() != null) index.abandon(chunk.capture());
+        }
+        pending.clear();
+        unloaded.clear();
+    }
+
+    /**
+     * 按提交顺序写回已经汇总完成的区块
+     */
+    private boolean drainPending(ContainerIndex index) {
+        boolean progressed = false;
+        while (!pending.isEmpty() && pending.peekFirst().future().isDone()) {
+            PendingChunk chunk = pending.pollFirst();
+            progressed = true;
+
+            List<ScanWorkers.Result> results;
+            try {
+                results = chunk.future().join();
+            } catch (Exception e) {
+                ContainerSearchCommand.LOGGER.error("Parallel scan of chunk [{}, {}] failed", chunk.x(), chunk.z(), e);
+                // 这些容器的脏标记已在抓取时清掉，不重新记脏的话索引会一直保留旧内容
+                if (chunk.capture() != null) index.abandon(chunk.capture());
+                coverChunk(chunk.x(), chunk.z());
+                completeChunk();
+                continue;
+            }
+            if (chunk.capture() != null) index.install(chunk.capture(), results);
+
+            // 等待期间可能有搜索被取消，重新确定覆盖该区块的搜索
+            BlockBox box = coverChunk(chunk.x(), chunk.z());
+            if (box == null) continue;
+            emitHits(index, chunk.x(), chunk.z(), box);
+            if (ContainerSearchCommand.CONFIG.scanEntities && world.isChunkLoaded(chunk.x(), chunk.z())) {
+                emitEntityHits(chunk.x(), chunk.z(), box);
+            }
+            completeChunk();
+        }
+        return progressed;
+    }
+
+    /**
+     * 按提交顺序发送已经读完的未加载区块中的命中
+     */
+    private boolean drainUnloaded() {
+        boolean progressed = false;
+        while (!unloaded.isEmpty() && unloaded.peekFirst().future().isDone()) {
+            UnloadedChunk chunk = unloaded.pollFirst();
+            progressed = true;
+
+            List<RegionScanner.StoredContainer> containers;
+            try {
+                containers = chunk.future().join();
+            } catch (Exception e) {
+                ContainerSearchCommand.LOGGER.error("Reading unloaded chunk [{}, {}] failed", chunk.x(), chunk.z(), e);
+                coverChunk(chunk.x(), chunk.z());
+                completeChunk();
+                continue;
+            }
+
+            BlockBox box = coverChunk(chunk.x(), chunk.z());
+            if (box == null) continue;
+            for (RegionScanner.StoredContainer container : containers) {
+                BlockPos pos = BlockPos.fromLong(container.pos());
+                if (!box.contains(pos)) continue;
+                stats.inventoriesScanned.increment();
+
+                // 带组件条件的搜索才需要把原始物品标签解码成物品，每个容器最多解码一次
+                Inventory stored = null;
+                for (int rawId : rawIds) {
+                    int count = container.counts().get(rawId);
+                    if (count == 0) continue;
+
+                    int nested = container.counts().getNested(rawId);
+                    for (Target target : targets.get(rawId)) {
+                        SearchJob job = target.job();
+                        if (!job.coversChunk) continue;
+                        if (stored == null && job.query.isPrecise()) stored = container.decode(world.getRegistryManager());
+                        job.acceptHit(target.itemIndex(), pos, container.block(), count, nested, stored);
+                    }
+                }
+            }
+            completeChunk();
+        }
+        return progressed;
+    }
+
+    /**
+     * 标记覆盖该区块的搜索，并返回它们在该区块内包围盒的并集；没有搜索覆盖时返回 null
+     */
+    private BlockBox coverChunk(int cx, int cz) {
+        BlockBox union = null;
+        for (SearchJob job : jobs) {
+            job.coversChunk = job.isActive() && job.area.coversChunk(cx, cz);
+            if (!job.coversChunk) continue;
+
+            BlockBox box = job.area.chunkBox(cx, cz);
+            union = union == null ? box : new BlockBox(
+                    Math.min(union.getMinX(), box.getMinX()), Math.min(union.getMinY(), box.getMinY()), Math.min(union.getMinZ(), box.getMinZ()),
+                    Math.max(union.getMaxX(), box.getMaxX()), Math.max(union.getMaxY(), box.getMaxY()), Math.max(union.getMaxZ(), box.getMaxZ()));
+        }
+        return union;
+    }
+
+    /**
+     * 同一次区块遍历回答所有搜索的所有目标物品：每个物品查一次倒排表，命中分发给要找它的搜索
+     */
+    private void emitHits(ContainerIndex index, int cx, int cz, BlockBox box) {
+        for (int rawId : rawIds) {
+            List<Target> wanted = targets.get(rawId);
+            if (!anyCovers(wanted)) continue;
+
+            index.forEachHit(rawId, cx, cz, box, (pos, block, count, nested) -> {
+                for (Target target : wanted) {
+                    if (target.job().coversChunk) target.job().acceptHit(target.itemIndex(), pos, block, count, nested, null);
+                }
+            });
+        }
+    }
+
+    private boolean anyPreciseCovers() {
+        for (SearchJob job : jobs) {
+            if (job.coversChunk && job.query.isPrecise()) return true;
+        }
+        return false;
+    }
+
+    private static boolean anyCovers(List<Target> wanted) {
+        for (Target target : wanted) {
+            if (target.job().coversChunk) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 实体携带的物品。按包围盒查询世界的分段实体缓存，只访问相交且有实体的区段，不遍历整个实体列表；
+     * 每个实体的物品只汇总一次，供所有只按物品 id 搜索的搜索共用
+     */
+    private void emitEntityHits(int cx, int cz, BlockBox box) {
+        entityBuffer.clear();
+        world.collectEntitiesByType(TypeFilter.instanceOf(Entity.class),
+                new Box(box.getMinX(), box.getMinY(), box.getMinZ(), box.getMaxX() + 1, box.getMaxY() + 1, box.getMaxZ() + 1),
+                // 跨区块边界的实体只算在它所在的区块里，避免重复
+                entity -> entity.getChunkPos().x == cx && entity.getChunkPos().z == cz,
+                entityBuffer);
+
+        for (Entity entity : entityBuffer) {
+            long pos = entity.getBlockPos().asLong();
+            Inventory inventory = EntityContainers.of(entity);
+            if (inventory == null) continue;
+
+            boolean scanned = false;
+            boolean aggregated = false;
+            for (SearchJob job : jobs) {
+                if (!job.coversChunk || !job.wantsEntity(entity, pos)) continue;
+                if (!scanned) {
+                    stats.entitiesScanned.increment();
+                    scanned = true;
+                }
+
+                if (!job.query.isPrecise() && !aggregated) {
+                    entityCounts.clear();
+                    ContainerSnapshot snapshot = ContainerSnapshot.capture(pos, null, inventory);
+                    stats.slotsRead.add(snapshot.slotsRead);
+                    stats.nestedStacksExpanded.add(snapshot.aggregate(entityCounts, nestingStack));
+                    aggregated = true;
+                }
+                job.acceptEntity(entity.getType(), pos, inventory, entityCounts);
+            }
+        }
+        entityBuffer.clear();
+    }
+
+    private void sendProgress() {
+        for (SearchJob job : jobs) {
+            if (job.isActive()) job.sendProgress();
+        }
+    }
+
+    /**
+     * 切片占用的主线程时间由仍在进行的搜索平分
+     */
+    void addMainThreadNanos(long nanos) {
+        int active = activeJobs();
+        if (active == 0) return;
+
+        for (SearchJob job : jobs) {
+            if (job.isActive()) job.addMainThreadNanos(nanos / active);
+        }
+    }
+
+    public void finish() {
+        for (SearchJob job : jobs) {
+            if (job.isActive()) job.finish();
+        }
+    }
+
+    /**
+     * 同一玩家重复 /fr 时，旧的搜索作废
+     */
+    void cancel(ServerPlayerEntity player) {
+        for (SearchJob job : jobs) {
+            if (job.player == player) job.cancel();
+        }
+    }
+
+    private record Target(SearchJob job, int itemIndex) {
+    }
+
+    private record UnloadedChunk(int x, int z, CompletableFuture<List<RegionScanner.StoredContainer>> future) {
+    }
+
+    /**
+     * @param capture 本批次抓取的快照；只是在等其他搜索写回时为 null
+     */
+    private record PendingChunk(int x, int z, ContainerIndex.Capture capture, CompletableFuture<List<ScanWorkers.Result>> future) {
+    }
+}
@@ -276,250 +276,311 @@ import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.context.ParsedCommandNode;
 import com.mojang.brigadier.suggestion.SuggestionProvider;
-import net.minecraft.block.Blocks;
-import net.minecraft.block.entity.BlockEntity;
+import com.mojang.brigadier.suggestion.SuggestionsBuilder;
 import net.minecraft.command.CommandRegistryAccess;
 import net.minecraft.command.CommandSource;
-import net.minecraft.command.argument.ItemStackArgumentType;
-import net.minecraft.component.DataComponentTypes;
-import net.minecraft.component.type.BundleContentsComponent;
-import net.minecraft.component.type.ContainerComponent;
-import net.minecraft.entity.EntityType;
-import net.minecraft.entity.decoration.DisplayEntity;
-import net.minecraft.inventory.Inventory;
+import net.minecraft.command.argument.ItemPredicateArgumentType;
 import net.minecraft.item.Item;
-import net.minecraft.item.ItemStack;
 import net.minecraft.registry.Registries;
 import net.minecraft.server.command.CommandManager;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.network.ServerPlayerEntity;
-import net.minecraft.server.world.ServerWorld;
-import net.minecraft.text.ClickEvent;
-import net.minecraft.text.HoverEvent;
 import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
-import net.minecraft.util.math.AffineTransformation;
+import net.minecraft.util.Identifier;
 import net.minecraft.util.math.BlockPos;
-import org.joml.Vector3f;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
 
 public class SearchCommand {
 
-    private static final SuggestionProvider<ServerCommandSource> CONTAINER_SUGGESTIONS = (context, builder) ->
-            CommandSource.suggestMatching(new String[]{
-                    "chest", "barrel", "shulker_box", "trapped_chest", "dispenser", "dropper", "hopper"
-            }, builder);
+    // 容器类型：从方块注册表和方块标签补全。标签和多个条件需要加引号，引号内只补全最后一个逗号之后的部分
+    private static final SuggestionProvider<ServerCommandSource> CONTAINER_SUGGESTIONS = (context, builder) -> {
+        String remaining = builder.getRemaining();
+        if (!remaining.startsWith("\"")) {
+            return CommandSource.suggestMatching(Stream.concat(
+                    ContainerFilter.containerBlockIds().stream(),
+                    ContainerFilter.containerTagIds().stream().map(tag -> "\"" + tag)), builder);
+        }
+        SuggestionsBuilder offset = builder.createOffset(builder.getStart() + Math.max(remaining.lastIndexOf(','), 0) + 1);
+        return CommandSource.suggestMatching(Stream.concat(
+                ContainerFilter.containerBlockIds().stream(),
+                ContainerFilter.containerTagIds().stream()), offset);
+    };
+
+    // 逗号分隔的物品列表，只补全最后一个逗号之后的部分
+    private static final SuggestionProvider<ServerCommandSource> ITEM_LIST_SUGGESTIONS = (context, builder) -> {
+        String remaining = builder.getRemaining();
+        SuggestionsBuilder offset = builder.createOffset(builder.getStart() + remaining.lastIndexOf(',') + 1);
+        return CommandSource.suggestIdentifiers(Registries.ITEM.getIds(), offset);
+    };
 
     public static void register(CommandDispatcher<ServerCommandSource> dispatcher, CommandRegistryAccess registryAccess) {
         dispatcher.register(CommandManager.literal("fr")
-                .then(CommandManager.argument("item", ItemStackArgumentType.itemStack(registryAccess))
-                        .executes(ctx -> executeSearch(ctx, ItemStackArgumentType.getItemStackArgument(ctx, "item").getItem(), null, 10))
+                // 翻页与重新排序最近一次的搜索结果
+                .then(CommandManager.literal("page")
+                        .then(CommandManager.argument("page", IntegerArgumentType.integer(1))
+                                .executes(ctx -> showPage(ctx, IntegerArgumentType.getInteger(ctx, "page"), null))
+                        )
+                )
+                // 搜索开销统计
+                .then(CommandManager.literal("stats")
+                        .executes(SearchCommand::showStats)
+                )
+                // 全服普查: /fr census <物品> 开始，/fr census 查看进度和结果，/fr census stop 停止
+                .then(CommandManager.literal("census")
+                        .requires(source -> source.hasPermissionLevel(2))
+                        .executes(ctx -> showCensus(ctx))
+                        .then(CommandManager.literal("stop")
+                                .executes(ctx -> stopCensus(ctx)))
+                        .then(CommandManager.argument("item", ItemPredicateArgumentType.itemPredicate(registryAccess))
+                                .executes(ctx -> startCensus(ctx)))
+                )
+                .then(CommandManager.literal("sort")
+                        .then(CommandManager.literal("distance")
+                                .executes(ctx -> showPage(ctx, 1, SearchResults.SortMode.DISTANCE)))
+                        .then(CommandManager.literal("count")
+                                .executes(ctx -> showPage(ctx, 1, SearchResults.SortMode.COUNT)))
+                )
+                // 多物品: /fr multi <半径> diamond,netherite_ingot，一次区块遍历同时查询多种物品
+                .then(CommandManager.literal("multi")
                         .then(CommandManager.argument("radius", IntegerArgumentType.integer(1, 500))
-                                .executes(ctx -> executeSearch(ctx, ItemStackArgumentType.getItemStackArgument(ctx, "item").getItem(), null, IntegerArgumentType.getInteger(ctx, "radius")))
+                                .then(CommandManager.argument("items", StringArgumentType.greedyString())
+                                        .suggests(ITEM_LIST_SUGGESTIONS)
+                                        .executes(ctx -> executeMultiSearch(ctx, StringArgumentType.getString(ctx, "items"), IntegerArgumentType.getInteger(ctx, "radius")))
+                                )
+                        )
+                )
+                // 物品谓词：diamond、#minecraft:logs、enchanted_book[stored_enchantments~[{enchantments:"minecraft:mending"}]]
+                .then(CommandManager.argument("item", ItemPredicateArgumentType.itemPredicate(registryAccess))
+                        .executes(ctx -> executeSearch(ctx, null, 10))
+                        // 最近优先: /fr diamond limit 5 [半径] 找最近的 5 处；/fr diamond total 64 [半径] 凑够 64 个为止
+                        .then(CommandManager.literal("limit")
+                                .then(CommandManager.argument("limit", IntegerArgumentType.integer(1))
+                                        .executes(ctx -> executeNearest(ctx, IntegerArgumentType.getInteger(ctx, "limit"), 0, ContainerSearchCommand.CONFIG.nearestRadius))
+                                        .then(CommandManager.argument("radius", IntegerArgumentType.integer(1, 500))
+                                                .executes(ctx -> executeNearest(ctx, IntegerArgumentType.getInteger(ctx, "limit"), 0, IntegerArgumentType.getInteger(ctx, "radius"))))
+                                )
+                        )
+                        .then(CommandManager.literal("total")
+                                .then(CommandManager.argument("total", IntegerArgumentType.integer(1))
+                                        .executes(ctx -> executeNearest(ctx, 0, IntegerArgumentType.getInteger(ctx, "total"), ContainerSearchCommand.CONFIG.nearestRadius))
+                                        .then(CommandManager.argument("radius", IntegerArgumentType.integer(1, 500))
+                                                .executes(ctx -> executeNearest(ctx, 0, IntegerArgumentType.getInteger(ctx, "total"), IntegerArgumentType.getInteger(ctx, "radius"))))
+                                )
+                        )
+                        .then(CommandManager.argument("radius", IntegerArgumentType.integer(1, 500))
+                                .executes(ctx -> executeSearch(ctx, null, IntegerArgumentType.getInteger(ctx, "radius")))
                         )
                         .then(CommandManager.argument("containerName", StringArgumentType.string())
                                 .suggests(CONTAINER_SUGGESTIONS)
-                                .executes(ctx -> executeSearch(ctx, ItemStackArgumentType.getItemStackArgument(ctx, "item").getItem(), StringArgumentType.getString(ctx, "containerName"), 10))
+                                .executes(ctx -> executeSearch(ctx, StringArgumentType.getString(ctx, "containerName"), 10))
                                 .then(CommandManager.argument("radius_final", IntegerArgumentType.integer(1, 500))
-                                        .executes(ctx -> executeSearch(ctx, ItemStackArgumentType.getItemStackArgument(ctx, "item").getItem(), StringArgumentType.getString(ctx, "containerName"), IntegerArgumentType.getInteger(ctx, "radius_final")))
+                                        .executes(ctx -> executeSearch(ctx, StringArgumentType.getString(ctx, "containerName"), IntegerArgumentType.getInteger(ctx, "radius_final")))
                                 )
                         )
                 )
         );
     }
 
-    private static int executeSearch(CommandContext<ServerCommandSource> ctx, Item targetItem, String containerNameFilter, int radius) {
+    /**
+     * 参数的原文。谓词本身不透明，要拿原文拆出开头的物品 id 或标签，用来查容器索引
+     */
+    private static String argumentInput(CommandContext<ServerCommandSource> ctx, String name) {
+        for (ParsedCommandNode<ServerCommandSource> node : ctx.getNodes()) {
+            if (node.getNode().getName().equals(name)) return node.getRange().get(ctx.getInput());
+        }
+        return null;
+    }
+
+    private static int executeSearch(CommandContext<ServerCommandSource> ctx, String containerNameFilter, int radius) {
+        return executeSearch(ctx, containerNameFilter, radius, 0, 0);
+    }
+
+    private static int executeNearest(CommandContext<ServerCommandSource> ctx, int limit, int total, int radius) {
+        return executeSearch(ctx, null, radius, limit, total);
+    }
+
+    private static int executeSearch(CommandContext<ServerCommandSource> ctx, String containerNameFilter, int radius, int limit, int total) {
+        ItemQuery query;
+        try {
+            query = ItemQuery.parse(argumentInput(ctx, "item"), ItemPredicateArgumentType.getItemStackPredicate(ctx, "item"));
+        } catch (IllegalArgumentException e) {
+            ctx.getSource().sendFeedback(() -> Text.literal("错误：请以物品 id 或物品标签开头，而不是 " + e.getMessage()).formatted(Formatting.RED), false);
+            return 0;
+        }
+        return executeSearch(ctx, query, containerNameFilter, radius, limit, total);
+    }
+
+    private static int executeMultiSearch(CommandContext<ServerCommandSource> ctx, String itemList, int radius) {
+        List<Item> items = new ArrayList<>();
+        for (String part : itemList.split(",")) {
+            String name = part.trim();
+            if (name.isEmpty()) continue;
+
+            Identifier id = Identifier.tryParse(name);
+            if (id == null || !Registries.ITEM.containsId(id)) {
+                ctx.getSource().sendFeedback(() -> Text.literal("错误：未知物品 " + name).formatted(Formatting.RED), false);
+                return 0;
+            }
+            Item item = Registries.ITEM.get(id);
+            if (!items.contains(item)) items.add(item);
+        }
+
+        if (items.isEmpty()) {
+            ctx.getSource().sendFeedback(() -> Text.literal("错误：请至少指定一种物品！").formatted(Formatting.RED), false);
+            return 0;
+        }
+        return executeSearch(ctx, ItemQuery.of(items.toArray(new Item[0])), null, radius, 0, 0);
+    }
+
+    private static int executeSearch(CommandContext<ServerCommandSource> ctx, ItemQuery query, String containerNameFilter, int radius, int limit, int total) {
         try {
             ServerCommandSource source = ctx.getSource();
-            // 半径安全检查
-            if (radius > 75) {
-                source.sendFeedback(() -> Text.literal("错误：搜索半径不能超过 75！").formatted(Formatting.RED), false);
+            // 半径安全检查：搜索已经按 tick 预算分片执行，上限改由配置文件决定
+            int maxRadius = ContainerSearchCommand.CONFIG.maxRadius;
+            if (radius > maxRadius) {
+                source.sendFeedback(() -> Text.literal("错误：搜索半径不能超过 " + maxRadius + "！").formatted(Formatting.RED), false);
                 return 0;
             }
 
             ServerPlayerEntity player = source.getPlayerOrThrow();
             BlockPos playerPos = player.getBlockPos();
-            ServerWorld world = source.getWorld();
 
-            source.sendFeedback(() -> Text.literal("正在搜索半径 " + radius + " 内的 " + targetItem.getName().getString() + "...").formatted(Formatting.GRAY), false);
-
-            // 【优化 1】 字符串预处理：移出循环
-            // 如果用户没有输入过滤器，finalFilter 为 null
-            // 如果输入了，我们提前把它处理成 "纯净的小写关键词" (比如用户输 minecraft:Chest -> 存成 chest)
-            final String finalFilterKey;
+            // 【优化 1】 过滤器在这里一次性解析成方块位图，搜索过程中不再做字符串处理
+            // 如果用户没有输入过滤器，filter 为 null
+            ContainerFilter filter = null;
             if (containerNameFilter != null) {
-                String key = containerNameFilter.contains(":") ? containerNameFilter.split(":")[1] : containerNameFilter;
-                finalFilterKey = key.toLowerCase();
-            } else {
-                finalFilterKey = null;
+                try {
+                    filter = ContainerFilter.parse(containerNameFilter);
+                } catch (IllegalArgumentException e) {
+                    source.sendFeedback(() -> Text.literal("错误：未知的容器类型 " + e.getMessage()).formatted(Formatting.RED), false);
+                    return 0;
+                }
             }
 
-            boolean foundAny = false;
-
-            // 区块遍历计算
-            int minChunkX = (playerPos.getX() - radius) >> 4;
-            int maxChunkX = (playerPos.getX() + radius) >> 4;
-            int minChunkZ = (playerPos.getZ() - radius) >> 4;
-            int maxChunkZ = (playerPos.getZ() + radius) >> 4;
-
-            // 边界坐标
-            int minX = playerPos.getX() - radius;
-            int maxX = playerPos.getX() + radius;
-            int minY = playerPos.getY() - radius;
-            int maxY = playerPos.getY() + radius;
-            int minZ = playerPos.getZ() - radius;
-            int maxZ = playerPos.getZ() + radius;
-
-            // 开始遍历区块
-            for (int cx = minChunkX; cx <= maxChunkX; cx++) {
-                for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
-
-                    // 只检查已加载区块
-                    if (!world.isChunkLoaded(cx, cz)) continue;
-
-                    var chunk = world.getChunk(cx, cz);
-
-                    // 遍历该区块内的方块实体
-                    for (BlockEntity blockEntity : chunk.getBlockEntities().values()) {
-                        BlockPos pos = blockEntity.getPos();
+            SearchJob job = new SearchJob(source, player, query, filter, playerPos, radius, ContainerSearchCommand.CONFIG.searchShape, limit, total);
+            SearchStats stats = SearchStats.get(source.getWorld());
 
-                        // 快速坐标剔除
-                        if (pos.getX() < minX || pos.getX() > maxX ||
-                                pos.getY() < minY || pos.getY() > maxY ||
-                                pos.getZ() < minZ || pos.getZ() > maxZ) {
-                            continue;
-                        }
-
-                        if (blockEntity instanceof Inventory inventory) {
-
-                            // 【优化 2】 使用预处理好的字符串进行比较
-                            if (finalFilterKey != null) {
-                                // 直接获取 ID 字符串，避免创建多余对象
-                                String blockId = Registries.BLOCK.getId(blockEntity.getCachedState().getBlock()).getPath();
-                                if (!blockId.contains(finalFilterKey)) {
-                                    continue;
-                                }
-                            }
-
-                            // 扫描内容
-                            int count = scanInventory(inventory, targetItem);
-
-                            if (count > 0) {
-                                foundAny = true;
-                                sendFoundMessage(source, pos, blockEntity.getCachedState().getBlock().getName().getString(), count, targetItem);
-                                highlightBlock(source, pos);
-                            }
-                        }
-                    }
+            // 准入控制：冷却时间、预估成本，都在真正开始搜索之前检查
+            int cooldown = SearchAdmission.cooldownTicks(source, player);
+            if (cooldown > 0) {
+                stats.rejected.increment();
+                source.sendFeedback(() -> Text.literal("搜索太频繁，请 " + (cooldown + 19) / 20 + " 秒后再试。").formatted(Formatting.RED), false);
+                return 0;
+            }
+            long maxCost = ContainerSearchCommand.CONFIG.maxSearchCost;
+            if (maxCost > 0) {
+                long cost = SearchAdmission.estimateCost(source.getWorld(), job.area);
+                if (cost > maxCost) {
+                    stats.rejected.increment();
+                    source.sendFeedback(() -> Text.literal("搜索范围内的容器太多 (预估成本 " + cost + "，上限 " + maxCost + ")，请缩小半径。").formatted(Formatting.RED), false);
+                    return 0;
                 }
             }
 
-            if (!foundAny) {
-                source.sendFeedback(() -> Text.literal("未在附近找到该物品。").formatted(Formatting.RED), false);
+            // 【优化 5】 不在指令回调里同步搜索，交给调度器在后续 tick 中按时间预算分片执行
+            int position = SearchScheduler.submit(job);
+            if (position < 0) {
+                stats.rejected.increment();
+                source.sendFeedback(() -> Text.literal("服务器正忙，排队的搜索已满，请稍后再试。").formatted(Formatting.RED), false);
+                return 0;
             }
+            SearchAdmission.recordSearch(source, player);
 
+            if (position > 0) {
+                source.sendFeedback(() -> Text.literal("搜索排队中，前面还有 " + (position - 1) + " 个搜索...").formatted(Formatting.GRAY), false);
+            } else {
+                String goal = limit > 0 ? "最近的 " + limit + " 处 " : total > 0 ? "最近的 " + total + " 个 " : "的 ";
+                source.sendFeedback(() -> Text.literal("正在搜索半径 " + radius + " 内" + goal + query.label + "...").formatted(Formatting.GRAY), false);
+            }
             return Command.SINGLE_SUCCESS;
         } catch (Exception e) {
-            e.printStackTrace();
+            ContainerSearchCommand.LOGGER.error("Failed to start search", e);
             return 0;
         }
     }
 
-    /**
-     * 【优化 3】 极致性能版：移除 Stream 流，全改用 For 循环
-     * 避免了创建 Stream 对象和 Lambda 表达式的开销
-     */
-    private static int scanInventory(Inventory inventory, Item targetItem) {
-        int totalCount = 0;
-        int size = inventory.size(); // 缓存 inventory 大小
-
-        for (int i = 0; i < size; i++) {
-            ItemStack stack = inventory.getStack(i);
-            if (stack.isEmpty()) continue;
+    private static int startCensus(CommandContext<ServerCommandSource> ctx) {
+        try {
+            ServerCommandSource source = ctx.getSource();
+            String input = argumentInput(ctx, "item");
 
-            // 1. 直接匹配
-            if (stack.isOf(targetItem)) {
-                totalCount += stack.getCount();
+            ItemQuery query;
+            try {
+                query = ItemQuery.parse(input, ItemPredicateArgumentType.getItemStackPredicate(ctx, "item"));
+            } catch (IllegalArgumentException e) {
+                source.sendFeedback(() -> Text.literal("错误：请以物品 id 或物品标签开头，而不是 " + e.getMessage()).formatted(Formatting.RED), false);
+                return 0;
             }
-
-            // 2. 检查潜影盒 (ContainerComponent)
-            // 只有当物品可能是容器时才去获取组件 (虽然 .get 内部已经很快了，但可以省去判断)
-            ContainerComponent containerData = stack.get(DataComponentTypes.CONTAINER);
-            if (containerData != null) {
-                // 手动遍历 List，代替 stream().mapToInt().sum()
-                for (ItemStack innerStack : containerData.iterateNonEmpty()) {
-                    if (innerStack.isOf(targetItem)) {
-                        totalCount += innerStack.getCount();
-                    }
-                }
+            // 普查要跑很久并且可能跨重启，只按物品 id 统计
+            if (query.isPrecise()) {
+                source.sendFeedback(() -> Text.literal("错误：普查不支持物品组件条件。").formatted(Formatting.RED), false);
+                return 0;
             }
 
-            // 3. 检查收纳袋 (BundleContentsComponent)
-            BundleContentsComponent bundleData = stack.get(DataComponentTypes.BUNDLE_CONTENTS);
-            if (bundleData != null) {
-                // 1.21.4 Bundle 遍历方法
-                for (int j = 0; j < bundleData.size(); j++) {
-                    ItemStack innerStack = bundleData.get(j);
-                    if (innerStack.isOf(targetItem)) {
-                        totalCount += innerStack.getCount();
-                    }
-                }
-            }
+            // 控制台也可以发起普查，结果输出到控制台
+            ServerPlayerEntity player = source.getPlayer();
+            Census.start(source.getServer(), input, query, player != null ? player.getUuid() : null);
+            source.sendFeedback(() -> Text.literal("开始普查全服已加载容器中的 " + input + "，用 /fr census 查看进度。").formatted(Formatting.GRAY), true);
+            return Command.SINGLE_SUCCESS;
+        } catch (Exception e) {
+            ContainerSearchCommand.LOGGER.error("Failed to start census", e);
+            return 0;
         }
-        return totalCount;
     }
 
-    private static void sendFoundMessage(ServerCommandSource source, BlockPos pos, String containerName, int count, Item item) {
-        String coordsText = String.format("[%d, %d, %d]", pos.getX(), pos.getY(), pos.getZ());
-
-        Text message = Text.literal("发现 ")
-                .append(Text.literal(String.valueOf(count)).formatted(Formatting.GOLD))
-                .append(" 个 ")
-                .append(Text.translatable(item.getTranslationKey()).formatted(Formatting.AQUA))
-                .append(" 位于 ")
-                .append(Text.literal(containerName).formatted(Formatting.GREEN))
-                .append(" ")
-                .append(Text.literal(coordsText)
-                        .formatted(Formatting.YELLOW, Formatting.UNDERLINE)
-                        .styled(style -> style
-                                .withClickEvent(new ClickEvent(ClickEvent.Action.SUGGEST_COMMAND, "/tp @s " + pos.getX() + " " + pos.getY() + " " + pos.getZ()))
-                                .withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, Text.literal("点击传送")))
-                        )
-                );
-
-        source.sendFeedback(() -> message, false);
+    private static int stopCensus(CommandContext<ServerCommandSource> ctx) {
+        try {
+            boolean stopped = Census.stop();
+            ctx.getSource().sendFeedback(() -> Text.literal(stopped ? "普查已停止。" : "没有进行中的普查。").formatted(Formatting.GRAY), stopped);
+            return Command.SINGLE_SUCCESS;
+        } catch (Exception e) {
+            ContainerSearchCommand.LOGGER.error("Failed to stop census", e);
+            return 0;
+        }
     }
 
-    private static void highlightBlock(ServerCommandSource source, BlockPos pos) {
-        ServerWorld world = source.getWorld();
-        DisplayEntity.BlockDisplayEntity display = new DisplayEntity.BlockDisplayEntity(EntityType.BLOCK_DISPLAY, world);
-
-        display.setPos(pos.getX(), pos.getY(), pos.getZ());
-        display.setBlockState(Blocks.SEA_LANTERN.getDefaultState());
-        display.setGlowing(true);
-
-        float scale = 0.4f;
-        float offset = (1.0f - scale) / 2.0f;
-
-        display.setTransformation(new AffineTransformation(
-                new Vector3f(offset, offset, offset),
-                null,
-                new Vector3f(scale, scale, scale),
-                null
-        ));
+    private static int showCensus(CommandContext<ServerCommandSource> ctx) {
+        try {
+            ctx.getSource().sendFeedback(Census::describe, false);
+            return Command.SINGLE_SUCCESS;
+        } catch (Exception e) {
+            ContainerSearchCommand.LOGGER.error("Failed to show census", e);
+            return 0;
+        }
+    }
 
-        world.spawnEntity(display);
+    private static int showStats(CommandContext<ServerCommandSource> ctx) {
+        try {
+            ctx.getSource().sendFeedback(SearchStats::describe, false);
+            return Command.SINGLE_SUCCESS;
+        } catch (Exception e) {
+            ContainerSearchCommand.LOGGER.error("Failed to show search stats", e);
+            return 0;
+        }
+    }
 
-        new Timer().schedule(new TimerTask() {
-            @Override
-            public void run() {
-                source.getServer().execute(() -> {
-                    if (!display.isRemoved()) display.discard();
-                });
+    private static int showPage(CommandContext<ServerCommandSource> ctx, int page, SearchResults.SortMode sortMode) {
+        try {
+            ServerCommandSource source = ctx.getSource();
+            SearchResults results = SearchResults.get(source.getPlayerOrThrow());
+            if (results == null) {
+                source.sendFeedback(() -> Text.literal("没有可以翻页的搜索结果。").formatted(Formatting.RED), false);
+                return 0;
             }
-        }, 10000);
+
+            SearchConfig config = ContainerSearchCommand.CONFIG;
+            if (sortMode != null) results.sort(sortMode, config.maxResults);
+            results.showPage(source, page, config.pageSize);
+            return Command.SINGLE_SUCCESS;
+        } catch (Exception e) {
+            ContainerSearchCommand.LOGGER.error("Failed to show search results page", e);
+            return 0;
+        }
     }
-}
\ No newline at end of file
+}
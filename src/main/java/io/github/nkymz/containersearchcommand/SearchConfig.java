@@ -0,0 +1,217 @@
+package io.github.nkymz.containersearchcommand;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * config/containersearch.properties 中的可调参数。
+ * 文件不存在时写出一份默认配置；缺失或无法解析的项保持默认值。
+ */
+public class SearchConfig {
+
+    public static final String FILE_NAME = ContainerSearchCommand.MOD_ID + ".properties";
+    // 时间预算的下限 (毫秒)
+    private static final double MIN_BUDGET_MILLIS = 0.1;
+
+    // 允许的最大搜索半径 (指令参数本身上限为 500)
+    public int maxRadius = 500;
+    // 最近优先搜索 (/fr <物品> limit|total <数量>) 不指定半径时的默认半径，找够了就提前结束，可以比普通搜索大
+    public int nearestRadius = 96;
+    // 搜索范围形状：CUBE (立方体，和原来一致)、SPHERE (球体) 或 CYLINDER (半径内、上下各 radius 格的圆柱)
+    public SearchArea.Shape searchShape = SearchArea.Shape.CUBE;
+    // 同一玩家两次 /fr 之间的冷却时间 (秒)，OP 不受限制
+    public int searchCooldownSeconds = 3;
+    // 全服同时进行的搜索数上限，超出的搜索排队，0 表示不限
+    public int maxConcurrentSearches = 8;
+    // 排队的搜索数上限，队列满时直接拒绝
+    public int maxQueuedSearches = 16;
+    // 单次搜索的预估成本上限 (已加载区块数 × 4 + 已知容器数 + 未加载区块数 × 64)，超出时拒绝，0 表示不限
+    public long maxSearchCost = 50000;
+    // 每 tick 留给搜索任务的时间预算 (毫秒)
+    public double tickBudgetMillis = 2.0;
+    // 每 tick 留给后台普查 (/fr census) 的时间预算 (毫秒)
+    public double censusBudgetMillis = 1.0;
+    // 每 tick 最多执行的切片数
+    public int maxSlicesPerTick = 16;
+    // 每个切片包含的区块数
+    public int chunksPerSlice = 8;
+    // 同一 tick 内范围重叠的搜索合并成一次区块遍历
+    public boolean coalesceSearches = true;
+    // 并行模式：主线程只抓取容器快照，汇总统计在工作线程池中进行
+    public boolean parallelScan = false;
+    // 工作线程数，0 表示 CPU 核心数 - 1
+    public int scanThreads = 0;
+    // 同时搜索未加载区块：在后台直接读取区域文件里的容器数据，不加载区块 (磁盘读取量大，默认关闭)
+    public boolean searchUnloadedChunks = false;
+    // 每个搜索同时在读取的未加载区块数上限
+    public int maxUnloadedReads = 16;
+    // 同时搜索实体携带的物品 (运输矿车、运输船、驴/骡/羊驼、物品展示框、掉落物)
+    public boolean scanEntities = true;
+    // 嵌套容器 (潜影盒、收纳袋) 最多展开的层数，1 表示只看顶层物品里的一层，0 表示不展开
+    public int maxNestingDepth = 8;
+    // 每页显示的结果数
+    public int pageSize = 10;
+    // 排序后最多保留的结果数
+    public int maxResults = 200;
+    // 默认排序方式：DISTANCE 或 COUNT
+    public SearchResults.SortMode defaultSort = SearchResults.SortMode.DISTANCE;
+    // 高亮持续时间 (秒)
+    public int highlightSeconds = 10;
+    // 每个玩家同时存在的高亮实体上限
+    public int maxHighlightsPerPlayer = 50;
+    // 搜索统计写入日志的间隔 (秒)，0 表示不写
+    public int statsLogIntervalSeconds = 300;
+    // 每个维度的容器索引内存上限 (MB)，超出后按区块淘汰最久未查询的缓存
+    public int indexMemoryMb = 64;
+    // 关服时把容器索引写入存档 (data/containersearch/)，下次启动后未改动的区块不需要重新扫描
+    public boolean persistIndex = true;
+
+    public static SearchConfig load(Path configDir) {
+        SearchConfig config = new SearchConfig();
+        Path file = configDir.resolve(FILE_NAME);
+
+        Properties props = new Properties();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                props.load(reader);
+            } catch (IOException e) {
+                ContainerSearchCommand.LOGGER.warn("Failed to read {}, using defaults", file, e);
+            }
+        }
+
+        config.maxRadius = getInt(props, "maxRadius", config.maxRadius);
+        config.nearestRadius = getInt(props, "nearestRadius", config.nearestRadius);
+        config.searchShape = getEnum(props, "searchShape", config.searchShape);
+        config.searchCooldownSeconds = getInt(props, "searchCooldownSeconds", config.searchCooldownSeconds);
+        config.maxConcurrentSearches = getInt(props, "maxConcurrentSearches", config.maxConcurrentSearches);
+        config.maxQueuedSearches = getInt(props, "maxQueuedSearches", config.maxQueuedSearches);
+        config.maxSearchCost = getLong(props, "maxSearchCost", config.maxSearchCost);
+        // 预算、切片数和切片大小为 0 时搜索永远不会推进，也不会释放并发名额
+        config.tickBudgetMillis = Math.max(MIN_BUDGET_MILLIS, getDouble(props, "tickBudgetMillis", config.tickBudgetMillis));
+        config.censusBudgetMillis = Math.max(MIN_BUDGET_MILLIS, getDouble(props, "censusBudgetMillis", config.censusBudgetMillis));
+        config.maxSlicesPerTick = Math.max(1, getInt(props, "maxSlicesPerTick", config.maxSlicesPerTick));
+        config.chunksPerSlice = Math.max(1, getInt(props, "chunksPerSlice", config.chunksPerSlice));
+        config.coalesceSearches = getBoolean(props, "coalesceSearches", config.coalesceSearches);
+        config.parallelScan = getBoolean(props, "parallelScan", config.parallelScan);
+        config.scanThreads = getInt(props, "scanThreads", config.scanThreads);
+        config.searchUnloadedChunks = getBoolean(props, "searchUnloadedChunks", config.searchUnloadedChunks);
+        config.maxUnloadedReads = Math.max(1, getInt(props, "maxUnloadedReads", config.maxUnloadedReads));
+        config.scanEntities = getBoolean(props, "scanEntities", config.scanEntities);
+        config.maxNestingDepth = getInt(props, "maxNestingDepth", config.maxNestingDepth);
+        config.pageSize = Math.max(1, getInt(props, "pageSize", config.pageSize));
+        config.maxResults = Math.max(1, getInt(props, "maxResults", config.maxResults));
+        config.defaultSort = getEnum(props, "defaultSort", config.defaultSort);
+        config.highlightSeconds = getInt(props, "highlightSeconds", config.highlightSeconds);
+        config.maxHighlightsPerPlayer = Math.max(1, getInt(props, "maxHighlightsPerPlayer", config.maxHighlightsPerPlayer));
+        config.statsLogIntervalSeconds = getInt(props, "statsLogIntervalSeconds", config.statsLogIntervalSeconds);
+        config.indexMemoryMb = getInt(props, "indexMemoryMb", config.indexMemoryMb);
+        config.persistIndex = getBoolean(props, "persistIndex", config.persistIndex);
+
+        // 写回一次，让新增的配置项出现在文件里
+        config.save(file);
+        return config;
+    }
+
+    public long tickBudgetNanos() {
+        return (long) (tickBudgetMillis * 1_000_000L);
+    }
+
+    public long censusBudgetNanos() {
+        return (long) (censusBudgetMillis * 1_000_000L);
+    }
+
+    private void save(Path file) {
+        Properties props = new Properties();
+        props.setProperty("maxRadius", String.valueOf(maxRadius));
+        props.setProperty("nearestRadius", String.valueOf(nearestRadius));
+        props.setProperty("searchShape", searchShape.name());
+        props.setProperty("searchCooldownSeconds", String.valueOf(searchCooldownSeconds));
+        props.setProperty("maxConcurrentSearches", String.valueOf(maxConcurrentSearches));
+        props.setProperty("maxQueuedSearches", String.valueOf(maxQueuedSearches));
+        props.setProperty("maxSearchCost", String.valueOf(maxSearchCost));
+        props.setProperty("tickBudgetMillis", String.valueOf(tickBudgetMillis));
+        props.setProperty("censusBudgetMillis", String.valueOf(censusBudgetMillis));
+        props.setProperty("maxSlicesPerTick", String.valueOf(maxSlicesPerTick));
+        props.setProperty("chunksPerSlice", String.valueOf(chunksPerSlice));
+        props.setProperty("coalesceSearches", String.valueOf(coalesceSearches));
+        props.setProperty("parallelScan", String.valueOf(parallelScan));
+        props.setProperty("scanThreads", String.valueOf(scanThreads));
+        props.setProperty("searchUnloadedChunks", String.valueOf(searchUnloadedChunks));
+        props.setProperty("maxUnloadedReads", String.valueOf(maxUnloadedReads));
+        props.setProperty("scanEntities", String.valueOf(scanEntities));
+        props.setProperty("maxNestingDepth", String.valueOf(maxNestingDepth));
+        props.setProperty("pageSize", String.valueOf(pageSize));
+        props.setProperty("maxResults", String.valueOf(maxResults));
+        props.setProperty("defaultSort", defaultSort.name());
+        props.setProperty("highlightSeconds", String.valueOf(highlightSeconds));
+        props.setProperty("maxHighlightsPerPlayer", String.valueOf(maxHighlightsPerPlayer));
+        props.setProperty("statsLogIntervalSeconds", String.valueOf(statsLogIntervalSeconds));
+        props.setProperty("indexMemoryMb", String.valueOf(indexMemoryMb));
+        props.setProperty("persistIndex", String.valueOf(persistIndex));
+
+        try {
+            Files.createDirectories(file.getParent());
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                props.store(writer, "Container Search Command");
+            }
+        } catch (IOException e) {
+            ContainerSearchCommand.LOGGER.warn("Failed to write {}", file, e);
+        }
+    }
+
+    private static int getInt(Properties props, String key, int def) {
+        String value = props.getProperty(key);
+        if (value == null) return def;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            ContainerSearchCommand.LOGGER.warn("Invalid value for {}: {}", key, value);
+            return def;
+        }
+    }
+
+    private static long getLong(Properties props, String key, long def) {
+        String value = props.getProperty(key);
+        if (value == null) return def;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            ContainerSearchCommand.LOGGER.warn("Invalid value for {}: {}", key, value);
+            return def;
+        }
+    }
+
+    private static double getDouble(Properties props, String key, double def) {
+        String value = props.getProperty(key);
+        if (value == null) return def;
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            ContainerSearchCommand.LOGGER.warn("Invalid value for {}: {}", key, value);
+            return def;
+        }
+    }
+
+    private static boolean getBoolean(Properties props, String key, boolean def) {
+        String value = props.getProperty(key);
+        if (value == null) return def;
+        return Boolean.parseBoolean(value.trim());
+    }
+
+    private static <E extends Enum<E>> E getEnum(Properties props, String key, E def) {
+        String value = props.getProperty(key);
+        if (value == null) return def;
+        try {
+            return Enum.valueOf(def.getDeclaringClass(), value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            ContainerSearchCommand.LOGGER.warn("Invalid value for {}: {}", key, value);
+            return def;
+        }
+    }
+}
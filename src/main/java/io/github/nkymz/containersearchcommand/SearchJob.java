@@ -0,0 +1,179 @@
+package io.github.nkymz.containersearchcommand;
+
+import net.minecraft.block.Block;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityType;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * 一次 /fr 搜索：玩家、查询条件、范围和结果。
+ * 区块遍历由 {@link SearchBatch} 负责 (同一 tick 内范围重叠的搜索共用一次遍历)，命中再分发到这里过滤、记录。
+ * 搜索过程中在快捷栏上方显示进度；自己范围内的区块处理完就把结果排序、分页发送，不等同批次的其他搜索。
+ */
+public class SearchJob {
+
+    final ServerPlayerEntity player;
+    private final ServerCommandSource source;
+    final ServerWorld world;
+    final ItemQuery query;
+    private final ContainerFilter filter;
+    final SearchArea area;
+    // 最近优先模式：找到最近的 limit 处，或凑够 total 个物品后提前结束；都为 0 时搜完整个范围
+    final int limit;
+    final int total;
+
+    private final SearchResults results;
+    private int lastProgressTick = -1;
+    // 被同一玩家的新搜索取代
+    private boolean cancelled = false;
+    // 所在批次当前处理的区块是否在本搜索范围内
+    boolean coversChunk = false;
+    // 范围内还没处理完的区块数，等待工作线程汇总或磁盘读取的区块也算在内
+    int remainingChunks;
+    private boolean finished = false;
+
+    // 精确统计时复用的嵌套展开栈和输出数组
+    private final NestingStack nestingStack = new NestingStack();
+    private final int[] preciseCounts = new int[2];
+
+    private final SearchStats stats;
+    private final long startNanos = System.nanoTime();
+    // 所在批次执行切片累计占用的主线程时间中，分摊给本搜索的部分
+    private long mainThreadNanos = 0;
+
+    public SearchJob(ServerCommandSource source, ServerPlayerEntity player, ItemQuery query, ContainerFilter filter, BlockPos center, int radius, SearchArea.Shape shape, int limit, int total) {
+        this.source = source;
+        this.player = player;
+        this.world = source.getWorld();
+        this.query = query;
+        this.filter = filter;
+        this.area = new SearchArea(shape, center, radius, world);
+        this.remainingChunks = area.chunkCount();
+        this.limit = limit;
+        this.total = total;
+        this.results = new SearchResults(query.items, center);
+        this.stats = SearchStats.get(world);
+    }
+
+    boolean isNearestFirst() {
+        return limit > 0 || total > 0;
+    }
+
+    /**
+     * 离中心水平距离小于 frontier 的区块都已经搜完时，判断结果是否已经足够
+     */
+    boolean isSatisfied(long frontierDistanceSq) {
+        return results.reached(frontierDistanceSq, limit, total);
+    }
+
+    /**
+     * 玩家下线、换了维度或发起了新的搜索后，继续搜索已经没有意义
+     */
+    public boolean isCancelled() {
+        return cancelled || player.isRemoved() || player.getServerWorld() != world;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * 还没有出结果、也没有被取消
+     */
+    boolean isActive() {
+        return !finished && !isCancelled();
+    }
+
+    /**
+     * 索引或未加载区块中的一处命中；包围盒可能是几个搜索范围的并集，先确认在本搜索范围内
+     *
+     * @param stored 未加载区块中解码出的物品栏，带组件条件时用它精确统计；为 null 时读取世界中的方块实体
+     */
+    void acceptHit(int itemIndex, BlockPos pos, Block block, int count, int nested, Inventory stored) {
+        if (!area.contains(pos.asLong())) return;
+
+        // 【优化 2】 容器类型过滤只是一次位测试
+        if (filter != null && !filter.matches(block)) {
+            return;
+        }
+
+        // 带组件条件时，只对物品 id 命中的容器重新读取物品栏，精确统计
+        if (query.isPrecise()) {
+            Inventory inventory = stored;
+            if (inventory == null) {
+                if (!world.isChunkLoaded(pos.getX() >> 4, pos.getZ() >> 4) || !(world.getBlockEntity(pos) instanceof Inventory loaded)) return;
+                inventory = loaded;
+            }
+            query.countPrecise(inventory, query.items[itemIndex], nestingStack, preciseCounts);
+            if (preciseCounts[0] == 0) return;
+            count = preciseCounts[0];
+            nested = preciseCounts[1];
+        }
+
+        // 【优化 6】 命中只记进基本类型数组，消息等到结束后按页合并发送
+        results.add(pos.asLong(), block, itemIndex, count, nested);
+    }
+
+    boolean wantsEntity(Entity entity, long pos) {
+        return area.contains(pos) && (filter == null || filter.matches(entity.getType()));
+    }
+
+    /**
+     * 实体携带的物品。counts 是批次汇总好的统计，带组件条件时不用，改为逐个物品精确统计
+     */
+    void acceptEntity(EntityType<?> type, long pos, Inventory inventory, ItemCountTable counts) {
+        if (query.isPrecise()) {
+            for (int i = 0; i < query.items.length; i++) {
+                query.countPrecise(inventory, query.items[i], nestingStack, preciseCounts);
+                if (preciseCounts[0] > 0) results.add(pos, type, i, preciseCounts[0], preciseCounts[1]);
+            }
+            return;
+        }
+
+        for (int i = 0; i < query.rawIds.length; i++) {
+            int count = counts.get(query.rawIds[i]);
+            if (count > 0) results.add(pos, type, i, count, counts.getNested(query.rawIds[i]));
+        }
+    }
+
+    /**
+     * 进度按本搜索范围内已处理的区块计算，显示在快捷栏上方 (不进聊天栏)，每 tick 最多一次
+     */
+    void sendProgress() {
+        int tick = world.getServer().getTicks();
+        if (tick == lastProgressTick || remainingChunks <= 0) return;
+        lastProgressTick = tick;
+
+        int percent = (int) ((area.chunkCount() - remainingChunks) * 100L / area.chunkCount());
+        player.sendMessage(Text.literal("搜索中 " + percent + "%，已找到 " + results.size() + " 处").formatted(Formatting.GRAY), true);
+    }
+
+    void addMainThreadNanos(long nanos) {
+        mainThreadNanos += nanos;
+    }
+
+    public void finish() {
+        if (finished) return;
+        finished = true;
+        stats.recordQuery(results.size(), System.nanoTime() - startNanos, mainThreadNanos);
+        if (results.isEmpty()) {
+            source.sendFeedback(() -> Text.literal("未在附近找到该物品。").formatted(Formatting.RED), false);
+            return;
+        }
+
+        SearchConfig config = ContainerSearchCommand.CONFIG;
+        if (isNearestFirst()) {
+            results.sortNearest(limit, total, config.maxResults);
+        } else {
+            results.sort(config.defaultSort, config.maxResults);
+        }
+        SearchResults.store(player, results);
+        results.showPage(source, 1, config.pageSize);
+    }
+}
@@ -0,0 +1,228 @@
+package io.github.nkymz.containersearchcommand;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import net.minecraft.block.Block;
+import net.minecraft.entity.EntityType;
+import net.minecraft.item.Item;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.ClickEvent;
+import net.minecraft.text.HoverEvent;
+import net.minecraft.text.MutableText;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 一次搜索的命中结果。
+ * <p>
+ * 搜索过程中只往并行的基本类型数组里追加，不构造任何 Text；
+ * 结束后按距离或数量排序、只保留前 N 条，每次只为当前页构造一条合并消息。
+ * 每个玩家保留最近一次的结果，供 /fr page 和 /fr sort 翻页、重排。
+ */
+public class SearchResults {
+
+    public enum SortMode {
+        DISTANCE, COUNT
+    }
+
+    private static final Map<UUID, SearchResults> LAST_RESULTS = new HashMap<>();
+
+    private final Item[] items;
+    private final BlockPos center;
+
+    private long[] positions = new long[16];
+    // 命中的来源：容器方块 (Block) 或带物品的实体类型 (EntityType)，显示名称时才取名字
+    private Object[] sources = new Object[16];
+    private int[] itemIndexes = new int[16];
+    private int[] counts = new int[16];
+    // 其中位于嵌套容器内的数量
+    private int[] nestedCounts = new int[16];
+    private int size = 0;
+
+    // 排序后的下标视图，sort 之前为 null
+    private int[] order;
+    private SortMode sortMode;
+
+    public SearchResults(Item[] items, BlockPos center) {
+        this.items = items;
+        this.center = center;
+    }
+
+    public void add(long pos, Object source, int itemIndex, int count, int nested) {
+        if (size == positions.length) {
+            int capacity = size * 2;
+            positions = Arrays.copyOf(positions, capacity);
+            sources = Arrays.copyOf(sources, capacity);
+            itemIndexes = Arrays.copyOf(itemIndexes, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            nestedCounts = Arrays.copyOf(nestedCounts, capacity);
+        }
+        positions[size] = pos;
+        sources[size] = source;
+        itemIndexes[size] = itemIndex;
+        counts[size] = count;
+        nestedCounts[size] = nested;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 排序并截取前 maxResults 条
+     */
+    public void sort(SortMode mode, int maxResults) {
+        this.sortMode = mode;
+        int[] indexes = new int[size];
+        for (int i = 0; i < size; i++) indexes[i] = i;
+
+        if (mode == SortMode.COUNT) {
+            IntArrays.quickSort(indexes, (a, b) -> Integer.compare(counts[b], counts[a]));
+        } else {
+            IntArrays.quickSort(indexes, (a, b) -> Long.compare(distanceSq(a), distanceSq(b)));
+        }
+        this.order = indexes.length > maxResults ? Arrays.copyOf(indexes, maxResults) : indexes;
+    }
+
+    /**
+     * 最近优先的搜索是否已经可以结束：距离平方不超过 maxDistanceSq 的范围已经搜完，
+     * 其中的命中数达到 limit，或物品总数达到 total (为 0 的条件不检查)
+     */
+    public boolean reached(long maxDistanceSq, int limit, int total) {
+        int hits = 0;
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            if (distanceSq(i) > maxDistanceSq) continue;
+            hits++;
+            sum += counts[i];
+        }
+        return (limit > 0 && hits >= limit) || (total > 0 && sum >= total);
+    }
+
+    /**
+     * 按距离排序，只保留最近的 limit 处，或者凑够 total 个物品所需的最近几处
+     */
+    public void sortNearest(int limit, int total, int maxResults) {
+        sort(SortMode.DISTANCE, limit > 0 ? Math.min(limit, maxResults) : maxResults);
+        if (total <= 0) return;
+
+        long sum = 0;
+        for (int i = 0; i < order.length; i++) {
+            sum += counts[order[i]];
+            if (sum >= total) {
+                order = Arrays.copyOf(order, i + 1);
+                return;
+            }
+        }
+    }
+
+    public int pageCount(int pageSize) {
+        return Math.max(1, (order.length + pageSize - 1) / pageSize);
+    }
+
+    /**
+     * 把一页结果合并成一条消息发送，并高亮这一页的容器
+     */
+    public void showPage(ServerCommandSource source, int page, int pageSize) {
+        int pages = pageCount(pageSize);
+        int current = Math.max(1, Math.min(page, pages));
+        int from = (current - 1) * pageSize;
+        int to = Math.min(from + pageSize, order.length);
+
+        MutableText message = Text.literal("搜索结果 第 " + current + "/" + pages + " 页 (共 " + size + " 处")
+                .append(order.length < size ? "，显示前 " + order.length + " 处" : "")
+                .append(sortMode == SortMode.COUNT ? "，按数量排序)" : "，按距离排序)")
+                .formatted(Formatting.GRAY);
+
+        List<BlockPos> shown = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            int hit = order[i];
+            BlockPos pos = BlockPos.fromLong(positions[hit]);
+            message.append("\n").append(hitLine(pos, sourceName(sources[hit]), counts[hit], nestedCounts[hit], items[itemIndexes[hit]]));
+            shown.add(pos);
+        }
+
+        if (pages > 1) {
+            message.append("\n");
+            if (current > 1) message.append(pageButton("[上一页]", current - 1)).append(" ");
+            if (current < pages) message.append(pageButton("[下一页]", current + 1));
+        }
+
+        source.sendFeedback(() -> message, false);
+
+        ServerPlayerEntity player = source.getPlayer();
+        if (player != null) HighlightManager.show(player, shown);
+    }
+
+    private static MutableText hitLine(BlockPos pos, String containerName, int count, int nested, Item item) {
+        String coordsText = "[" + pos.getX() + ", " + pos.getY() + ", " + pos.getZ() + "]";
+
+        MutableText line = Text.literal("发现 ")
+                .append(Text.literal(String.valueOf(count)).formatted(Formatting.GOLD))
+                .append(" 个 ")
+                .append(Text.translatable(item.getTranslationKey()).formatted(Formatting.AQUA))
+                .append(" 位于 ")
+                .append(Text.literal(containerName).formatted(Formatting.GREEN))
+                .append(" ")
+                .append(Text.literal(coordsText)
+                        .formatted(Formatting.YELLOW, Formatting.UNDERLINE)
+                        .styled(style -> style
+                                .withClickEvent(new ClickEvent(ClickEvent.Action.SUGGEST_COMMAND, "/tp @s " + pos.getX() + " " + pos.getY() + " " + pos.getZ()))
+                                .withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, Text.literal("点击传送")))
+                        )
+                );
+
+        // 区分直接放在容器里的和装在潜影盒、收纳袋里的
+        if (nested > 0) {
+            line.append(Text.literal(nested == count ? " (均在嵌套容器内)" : " (其中 " + nested + " 个在嵌套容器内)").formatted(Formatting.GRAY));
+        }
+        return line;
+    }
+
+    private static String sourceName(Object source) {
+        if (source instanceof Block block) return block.getName().getString();
+        return ((EntityType<?>) source).getName().getString();
+    }
+
+    private static MutableText pageButton(String label, int page) {
+        return Text.literal(label)
+                .formatted(Formatting.AQUA)
+                .styled(style -> style.withClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, "/fr page " + page)));
+    }
+
+    private long distanceSq(int hit) {
+        long dx = BlockPos.unpackLongX(positions[hit]) - center.getX();
+        long dy = BlockPos.unpackLongY(positions[hit]) - center.getY();
+        long dz = BlockPos.unpackLongZ(positions[hit]) - center.getZ();
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    public static void store(ServerPlayerEntity player, SearchResults results) {
+        LAST_RESULTS.put(player.getUuid(), results);
+    }
+
+    public static SearchResults get(ServerPlayerEntity player) {
+        return LAST_RESULTS.get(player.getUuid());
+    }
+
+    public static void forget(ServerPlayerEntity player) {
+        LAST_RESULTS.remove(player.getUuid());
+    }
+
+    public static void clear() {
+        LAST_RESULTS.clear();
+    }
+}
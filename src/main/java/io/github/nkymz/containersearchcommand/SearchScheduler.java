@@ -0,0 +1,108 @@
+package io.github.nkymz.containersearchcommand;
+
+import net.minecraft.server.MinecraftServer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 在服务器 tick 末尾按时间预算执行搜索任务。
+ * 本 tick 内提交的搜索先按范围是否重叠合并成 {@link SearchBatch}，
+ * 多个批次轮流执行切片，单个大范围搜索不会饿死其他玩家的搜索，也不会让单个 tick 超时。
+ * 同时进行的搜索数达到上限时，新的搜索进入等待队列，有搜索结束后按提交顺序开始。
+ */
+public class SearchScheduler {
+
+    private static final ArrayDeque<SearchBatch> JOBS = new ArrayDeque<>();
+    // 本 tick 内提交、还没有合并成批次的搜索
+    private static final List<SearchJob> SUBMITTED = new ArrayList<>();
+    // 超出并发上限、等待开始的搜索
+    private static final ArrayDeque<SearchJob> WAITING = new ArrayDeque<>();
+
+    /**
+     * @return 0 表示立即开始；大于 0 为在等待队列中的位置；-1 表示队列已满，搜索被拒绝
+     */
+    public static int submit(SearchJob job) {
+        // 同一玩家重复 /fr 时，旧的搜索直接作废
+        SUBMITTED.removeIf(other -> other.player == job.player);
+        WAITING.removeIf(other -> other.player == job.player);
+        for (SearchBatch batch : JOBS) batch.cancel(job.player);
+
+        if (hasCapacity()) {
+            SUBMITTED.add(job);
+            return 0;
+        }
+        if (WAITING.size() >= ContainerSearchCommand.CONFIG.maxQueuedSearches) return -1;
+        WAITING.addLast(job);
+        return WAITING.size();
+    }
+
+    /**
+     * 正在进行 (含本 tick 刚提交) 的搜索数，不含等待中的
+     */
+    public static int inFlight() {
+        int count = SUBMITTED.size();
+        for (SearchBatch batch : JOBS) count += batch.activeJobs();
+        return count;
+    }
+
+    private static boolean hasCapacity() {
+        int limit = ContainerSearchCommand.CONFIG.maxConcurrentSearches;
+        return limit <= 0 || inFlight() < limit;
+    }
+
+    public static void tick(MinecraftServer server) {
+        while (!WAITING.isEmpty() && hasCapacity()) {
+            SearchJob job = WAITING.pollFirst();
+            if (!job.isCancelled()) SUBMITTED.add(job);
+        }
+        if (!SUBMITTED.isEmpty()) {
+            JOBS.addAll(SearchBatch.coalesce(SUBMITTED));
+            SUBMITTED.clear();
+        }
+        if (JOBS.isEmpty()) return;
+
+        SearchConfig config = ContainerSearchCommand.CONFIG;
+        long deadline = System.nanoTime() + config.tickBudgetNanos();
+        int slices = 0;
+        // 连续没有进展的任务数；所有任务都在等工作线程时提前结束本 tick
+        int idle = 0;
+
+        while (!JOBS.isEmpty() && slices < config.maxSlicesPerTick && idle < JOBS.size() && System.nanoTime() < deadline) {
+            SearchBatch job = JOBS.pollFirst();
+            if (job.isCancelled()) {
+                job.discard();
+                continue;
+            }
+
+            long start = System.nanoTime();
+            try {
+                boolean progressed = job.runSlice(config);
+                job.addMainThreadNanos(System.nanoTime() - start);
+                if (progressed) {
+                    slices++;
+                    idle = 0;
+                } else {
+                    idle++;
+                }
+            } catch (Exception e) {
+                ContainerSearchCommand.LOGGER.error("Search job failed", e);
+                job.discard();
+                continue;
+            }
+
+            if (job.isDone()) {
+                job.finish();
+            } else {
+                JOBS.addLast(job);
+            }
+        }
+    }
+
+    public static void clear() {
+        JOBS.clear();
+        SUBMITTED.clear();
+        WAITING.clear();
+    }
+}
@@ -0,0 +1,193 @@
+package io.github.nkymz.containersearchcommand;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.text.MutableText;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 每个 ServerWorld 一份的搜索统计，通过 /fr stats 查看，并定期写入日志。
+ * <p>
+ * 计数器都是 LongAdder，工作线程汇总快照时也可以直接累加，不需要加锁。
+ * 表本身只在主线程读写，工作线程只持有已经取出的 SearchStats 引用。
+ */
+public class SearchStats {
+
+    private static final Map<ServerWorld, SearchStats> STATS = new IdentityHashMap<>();
+
+    // 完成的搜索次数
+    final LongAdder queries = new LongAdder();
+    // 因冷却、成本或队列已满被拒绝的搜索
+    final LongAdder rejected = new LongAdder();
+    // 检查过的已加载区块
+    final LongAdder chunksVisited = new LongAdder();
+    // 重新扫描时查找过的方块实体
+    final LongAdder blockEntitiesVisited = new LongAdder();
+    // 实际抓取了快照的容器
+    final LongAdder inventoriesScanned = new LongAdder();
+    // 从区域文件读取过的未加载区块
+    final LongAdder unloadedChunksRead = new LongAdder();
+    // 读取过的带物品实体
+    final LongAdder entitiesScanned = new LongAdder();
+    // 读取过的容器格子
+    final LongAdder slotsRead = new LongAdder();
+    // 展开过的嵌套物品 (潜影盒、收纳袋里的物品)
+    final LongAdder nestedStacksExpanded = new LongAdder();
+    // 命中的容器
+    final LongAdder hits = new LongAdder();
+    // 从提交到结束的时间
+    final Histogram wallTime = new Histogram();
+    // 其中实际占用主线程的时间
+    final Histogram mainThreadTime = new Histogram();
+
+    private final String worldName;
+    // 上次写日志时的搜索次数，没有新的搜索就不写
+    private long lastLoggedQueries = 0;
+
+    private SearchStats(ServerWorld world) {
+        this(world.getRegistryKey().getValue().toString());
+    }
+
+    /**
+     * 不属于任何世界的统计，基准测试用
+     */
+    SearchStats(String worldName) {
+        this.worldName = worldName;
+    }
+
+    public static SearchStats get(ServerWorld world) {
+        return STATS.computeIfAbsent(world, SearchStats::new);
+    }
+
+    public static void remove(ServerWorld world) {
+        STATS.remove(world);
+    }
+
+    public static void clear() {
+        STATS.clear();
+    }
+
+    /**
+     * 原地清零所有计数。索引等处持有的是这个对象本身，不能换成新对象
+     */
+    public void reset() {
+        queries.reset();
+        rejected.reset();
+        chunksVisited.reset();
+        blockEntitiesVisited.reset();
+        inventoriesScanned.reset();
+        unloadedChunksRead.reset();
+        entitiesScanned.reset();
+        slotsRead.reset();
+        nestedStacksExpanded.reset();
+        hits.reset();
+        wallTime.reset();
+        mainThreadTime.reset();
+        lastLoggedQueries = 0;
+    }
+
+    /**
+     * 搜索结束时记录一次
+     */
+    public void recordQuery(int hitCount, long wallNanos, long mainThreadNanos) {
+        queries.increment();
+        hits.add(hitCount);
+        wallTime.record(wallNanos);
+        mainThreadTime.record(mainThreadNanos);
+    }
+
+    /**
+     * 按配置的间隔把各维度的统计写入日志
+     */
+    public static void tick(MinecraftServer server) {
+        int interval = ContainerSearchCommand.CONFIG.statsLogIntervalSeconds * 20;
+        if (interval <= 0 || server.getTicks() % interval != 0) return;
+
+        for (SearchStats stats : STATS.values()) {
+            long count = stats.queries.sum();
+            if (count == stats.lastLoggedQueries) continue;
+            stats.lastLoggedQueries = count;
+
+            ContainerSearchCommand.LOGGER.info("[{}] {} searches, {} rejected, {} chunks, {} block entities, {} inventories, {} unloaded chunks, {} entities, {} slots, {} nested stacks, {} hits, wall p50/p99 {}/{} ms, main thread p50/p99 {}/{} ms",
+                    stats.worldName, count, stats.rejected.sum(), stats.chunksVisited.sum(), stats.blockEntitiesVisited.sum(),
+                    stats.inventoriesScanned.sum(), stats.unloadedChunksRead.sum(), stats.entitiesScanned.sum(), stats.slotsRead.sum(), stats.nestedStacksExpanded.sum(), stats.hits.sum(),
+                    stats.wallTime.percentileMillis(0.5), stats.wallTime.percentileMillis(0.99),
+                    stats.mainThreadTime.percentileMillis(0.5), stats.mainThreadTime.percentileMillis(0.99));
+        }
+    }
+
+    /**
+     * /fr stats 的输出
+     */
+    public static Text describe() {
+        MutableText message = Text.literal("搜索统计").formatted(Formatting.GRAY);
+        if (STATS.isEmpty()) return message.append("：暂无数据");
+
+        for (SearchStats stats : STATS.values()) {
+            long count = stats.queries.sum();
+            message.append(Text.literal("\n" + stats.worldName).formatted(Formatting.GREEN))
+                    .append(Text.literal("\n  搜索 " + count + " 次，命中 " + stats.hits.sum() + " 处，拒绝 " + stats.rejected.sum() + " 次"))
+                    .append(Text.literal("\n  区块 " + stats.chunksVisited.sum()
+                            + "，方块实体 " + stats.blockEntitiesVisited.sum()
+                            + "，容器 " + stats.inventoriesScanned.sum()
+                            + "，未加载区块 " + stats.unloadedChunksRead.sum()
+                            + "，实体 " + stats.entitiesScanned.sum()
+                            + "，格子 " + stats.slotsRead.sum()
+                            + "，嵌套物品 " + stats.nestedStacksExpanded.sum()))
+                    .append(Text.literal("\n  总耗时 p50/p99/最大 " + stats.wallTime.summary()))
+                    .append(Text.literal("\n  主线程 p50/p99/最大 " + stats.mainThreadTime.summary()));
+        }
+        return message;
+    }
+
+    /**
+     * 按 2 的幂分桶的耗时直方图 (桶 i 为 [2^i, 2^(i+1)) 微秒)，只用原子数组，不加锁。
+     * 百分位取所在桶的上界，精度在两倍以内，足够看出量级和长尾。
+     */
+    static final class Histogram {
+
+        private static final int BUCKETS = 32;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private volatile long maxNanos = 0;
+
+        void record(long nanos) {
+            long micros = Math.max(1, nanos / 1000);
+            int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+            buckets.incrementAndGet(bucket);
+            count.increment();
+            // 只在主线程记录，这里不需要 CAS
+            if (nanos > maxNanos) maxNanos = nanos;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+            count.reset();
+            maxNanos = 0;
+        }
+
+        double percentileMillis(double p) {
+            long total = count.sum();
+            if (total == 0) return 0;
+
+            long rank = (long) Math.ceil(total * p);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return (1L << (i + 1)) / 1000.0;
+            }
+            return maxNanos / 1_000_000.0;
+        }
+
+        String summary() {
+            return String.format("%.2f/%.2f/%.2f ms", percentileMillis(0.5), percentileMillis(0.99), maxNanos / 1_000_000.0);
+        }
+    }
+}
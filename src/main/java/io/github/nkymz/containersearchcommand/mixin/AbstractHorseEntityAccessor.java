@@ -0,0 +1,16 @@
+package io.github.nkymz.containersearchcommand.mixin;
+
+import net.minecraft.entity.passive.AbstractHorseEntity;
+import net.minecraft.inventory.SimpleInventory;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+/**
+ * 驴、骡、羊驼的箱子 (以及马鞍、马铠) 存在 AbstractHorseEntity 的 protected 字段里，实体搜索需要读取它
+ */
+@Mixin(AbstractHorseEntity.class)
+public interface AbstractHorseEntityAccessor {
+
+    @Accessor("items")
+    SimpleInventory containersearch$getItems();
+}
@@ -0,0 +1,30 @@
+package io.github.nkymz.containersearchcommand.mixin;
+
+import io.github.nkymz.containersearchcommand.ContainerIndex;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * 容器内容变动时通知索引记脏。
+ * <p>
+ * 挂在静态的 markDirty(World, BlockPos, BlockState) 上：实例方法 markDirty() 最终也调用它，
+ * 而熔炉、烟熏炉、高炉、酿造台在 tick 中改完格子后直接调用静态方法，不经过实例方法。
+ */
+@Mixin(BlockEntity.class)
+public abstract class BlockEntityMixin {
+
+    @Inject(method = "markDirty(Lnet/minecraft/world/World;Lnet/minecraft/util/math/BlockPos;Lnet/minecraft/block/BlockState;)V", at = @At("TAIL"))
+    private static void containersearch$onMarkDirty(World world, BlockPos pos, BlockState state, CallbackInfo ci) {
+        if (world instanceof ServerWorld serverWorld && world.getBlockEntity(pos) instanceof Inventory) {
+            ContainerIndex.get(serverWorld).markDirty(pos);
+        }
+    }
+}